@@ -0,0 +1,37 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+/**
+ * The BindingConverter interface is used by a ViewDataBinding to convert
+ * a value of a model notification before it is put into the ViewData,
+ * e.g. to format a number or a date.
+ * 
+ * @version 1.0
+ */
+public interface BindingConverter
+{
+	/**
+	 * Invoked on the event thread to convert a model value.
+	 * 
+	 * @param value The value passed with the model notification, can be null
+	 * @return The value for the ViewData, null removes the entry
+	 */
+	public abstract Object convert(Object value);
+}
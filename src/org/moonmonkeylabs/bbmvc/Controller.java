@@ -18,6 +18,8 @@
 
 package org.moonmonkeylabs.bbmvc;
 
+import net.rim.device.api.system.Application;
+
 /**
  * A Controller is the base for all controllers within an MVC based
  * application. It needs a View as well as an id to be instantiated.
@@ -31,8 +33,19 @@ package org.moonmonkeylabs.bbmvc;
  */
 public abstract class Controller
 {
+	public static final int TrimMemoryCovered = 1;
+	public static final int TrimMemoryEvicted = 2;
+	public static final int TrimMemoryCritical = 3;
+
 	private int _controllerId;
+	private boolean _resumed;
+	private boolean _initialized;
+	private int _viewVersion;
 	private ViewListener _viewListener;
+	private SerialWorker _viewEventWorker;
+	private boolean _asyncViewEvents;
+	private Model _boundModel;
+	private ViewDataBinder _binder;
 	protected View _view;
 
 	/**
@@ -52,9 +65,22 @@ public abstract class Controller
 		// Create a new instance of ViewListner
 		_viewListener = new ViewListener()
 		{
-			public void viewStateChanged(int key)
+			public void viewStateChanged(final int key)
 			{
-				onViewStateChanged(key);
+				if (!_asyncViewEvents)
+				{
+					dispatchViewStateChanged(key);
+					return;
+				}
+
+				// The events are handled in order on the Controller's own worker
+				_viewEventWorker.execute(new Runnable()
+				{
+					public void run()
+					{
+						dispatchViewStateChanged(key);
+					}
+				});
 			}
 		};
 		_view.addViewListener(_viewListener);
@@ -67,7 +93,17 @@ public abstract class Controller
 	 */
 	public void initialize(Object[] parameters)
 	{
-		onInitialize(parameters);
+		_initialized = true;
+		++_viewVersion;
+		long start = SpanRecorder.getInstance().begin();
+		try
+		{
+			onInitialize(parameters);
+		}
+		finally
+		{
+			SpanRecorder.getInstance().end("Controller.initialize", "controller", _controllerId, start);
+		}
 	}
 
 	/**
@@ -88,7 +124,16 @@ public abstract class Controller
 	 */
 	public void update(Object[] parameters)
 	{
-		onUpdate(parameters);
+		++_viewVersion;
+		long start = SpanRecorder.getInstance().begin();
+		try
+		{
+			onUpdate(parameters);
+		}
+		finally
+		{
+			SpanRecorder.getInstance().end("Controller.update", "controller", _controllerId, start);
+		}
 	}
 
 	/**
@@ -101,6 +146,109 @@ public abstract class Controller
 	abstract protected void onUpdate(Object[] parameters);
 
 	
+	/**
+	 * The dispatchViewStateChanged method passes a view event to 
+	 * onViewStateChanged.
+	 * 
+	 * @param key The unique id for the changed state
+	 */
+	private void dispatchViewStateChanged(int key)
+	{
+		long start = SpanRecorder.getInstance().begin();
+		try
+		{
+			onViewStateChanged(key);
+		}
+		finally
+		{
+			SpanRecorder.getInstance().end("Controller.onViewStateChanged", "controller", _controllerId, start);
+		}
+	}
+
+	/**
+	 * The pause method is used by the Navigator when the Controller's
+	 * screen is covered or the application goes to the background.
+	 * 
+	 */
+	public void pause()
+	{
+		if (_resumed)
+		{
+			_resumed = false;
+			onPause();
+		}
+	}
+
+	/**
+	 * The onPause method is only used internally by the pause method.
+	 * Controllers can override it to stop model subscriptions, timers and
+	 * anything else that is not needed while the screen is not visible.
+	 * 
+	 */
+	protected void onPause()
+	{
+	}
+
+	/**
+	 * The resume method is used by the Navigator when the Controller's
+	 * screen becomes visible.
+	 * 
+	 */
+	public void resume()
+	{
+		if (!_resumed)
+		{
+			_resumed = true;
+			onResume();
+		}
+	}
+
+	/**
+	 * The onResume method is only used internally by the resume method.
+	 * Controllers can override it to restart whatever was stopped in
+	 * onPause and rebuild what was released in onTrimMemory.
+	 * 
+	 */
+	protected void onResume()
+	{
+	}
+
+	/**
+	 * The isResumed accessor method returns if the Controller's screen
+	 * is currently visible.
+	 * 
+	 * @return True if the Controller is resumed, false if it is paused
+	 */
+	public boolean isResumed()
+	{
+		return _resumed;
+	}
+
+	/**
+	 * The trimMemory method is used by the Navigator to ask a Controller
+	 * that is not visible to release memory.
+	 * 
+	 * @param level TrimMemoryCovered, TrimMemoryEvicted or TrimMemoryCritical
+	 */
+	public void trimMemory(int level)
+	{
+		onTrimMemory(level);
+	}
+
+	/**
+	 * The onTrimMemory method is only used internally by the trimMemory
+	 * method. The level tells how much can be released:
+	 * 
+	 * TrimMemoryCovered - the screen is deep in the history, caches can be released
+	 * TrimMemoryEvicted - the screen is no longer in the history
+	 * TrimMemoryCritical - the device is low on memory, release everything possible
+	 * 
+	 * @param level The trim level
+	 */
+	protected void onTrimMemory(int level)
+	{
+	}
+
 	/**
 	 * The onViewStateChanged method is used only within any 
 	 * ViewListener. onViewStateChanged has to be implemented 
@@ -111,6 +259,123 @@ public abstract class Controller
 	 */
 	abstract protected void onViewStateChanged(int event);
 
+	/**
+	 * The setAsyncViewEvents method switches how view events are handled.
+	 * By default onViewStateChanged runs on the event thread. In async mode 
+	 * the events are queued to a worker that belongs to this Controller and
+	 * handled one after another in order, so the handlers of a Controller
+	 * never run at the same time. View updates from the handlers should 
+	 * go through updateView, which posts them to the event thread. An
+	 * exception thrown by a handler on the worker is rethrown on the
+	 * event thread.
+	 * 
+	 * @param asyncViewEvents True to handle view events on the worker
+	 */
+	public void setAsyncViewEvents(boolean asyncViewEvents)
+	{
+		if (asyncViewEvents && _viewEventWorker == null)
+		{
+			_viewEventWorker = new SerialWorker()
+			{
+				protected void onTaskFailed(Runnable task, final Throwable t)
+				{
+					// Rethrown on the event thread, like a failing handler in the default mode
+					Application.getApplication().invokeLater(new Runnable()
+					{
+						public void run()
+						{
+							if (t instanceof RuntimeException)
+								throw (RuntimeException) t;
+							if (t instanceof Error)
+								throw (Error) t;
+							throw new RuntimeException(t.toString());
+						}
+					});
+				}
+			};
+		}
+		_asyncViewEvents = asyncViewEvents;
+	}
+
+	/**
+	 * The isAsyncViewEvents accessor method returns whether view events
+	 * are handled on the Controller's worker.
+	 * 
+	 * @return True if view events are handled on the worker
+	 */
+	public boolean isAsyncViewEvents()
+	{
+		return _asyncViewEvents;
+	}
+
+	/**
+	 * The updateView method informs the View that an update is required.
+	 * It can be called from any thread, off the event thread the update 
+	 * is posted to the event thread.
+	 * 
+	 * @param key A numerical key for the update event
+	 */
+	protected void updateView(final int key)
+	{
+		if (Application.isEventDispatchThread())
+		{
+			dispatchUpdateView(key);
+			return;
+		}
+
+		Application.getApplication().invokeLater(new Runnable()
+		{
+			public void run()
+			{
+				long start = StallWatchdog.getInstance().begin(StallWatchdog.EventTask, _view, _controllerId);
+				try
+				{
+					dispatchUpdateView(key);
+				}
+				finally
+				{
+					StallWatchdog.getInstance().end(StallWatchdog.EventTask, _view, _controllerId, start);
+				}
+			}
+		});
+	}
+
+	/**
+	 * The updateDirtyViews method informs the View about all derived 
+	 * ViewData entries that became stale since the last call. It can 
+	 * be called at the end of onUpdate or after the ViewData was changed.
+	 * 
+	 */
+	protected void updateDirtyViews()
+	{
+		ViewDataHashtable viewData = getViewData();
+		if (viewData == null)
+			return;
+		int[] dirtyKeys = viewData.takeDirtyKeys();
+		for (int i = 0; i < dirtyKeys.length; ++i)
+			updateView(dirtyKeys[i]);
+	}
+
+	/**
+	 * The dispatchUpdateView method passes an update to the View's
+	 * updateView on the event thread.
+	 * 
+	 * @param key A numerical key for the update event
+	 */
+	private void dispatchUpdateView(int key)
+	{
+		++_viewVersion;
+		long start = SpanRecorder.getInstance().begin();
+		try
+		{
+			_view.updateView(key);
+		}
+		finally
+		{
+			SpanRecorder.getInstance().end("View.updateView", "view", key, start);
+		}
+	}
+
 	/**
 	 * getViewData is an accessor method for the View's ViewData
 	 * 
@@ -130,7 +395,106 @@ public abstract class Controller
 	{
 		// Check that the new ViewData is not null
 		if (viewData != null)
+		{
+			++_viewVersion;
 			_view.setViewData(viewData);
+		}
+	}
+
+	/**
+	 * setViewData is a mutator method for the View's ViewData that can 
+	 * update the View as well. If updateChanges is true, the new ViewData 
+	 * is compared to the current one and the View's updateView is called
+	 * only for the keys that were added, removed or changed. The ViewData
+	 * is set and all updates are made in one pass on the event thread.
+	 * 
+	 * @param viewData A ViewDataHastable instance - cannot be NULL
+	 * @param updateChanges True to update the View for all changed keys
+	 */
+	public void setViewData(final ViewDataHashtable viewData, boolean updateChanges)
+	{
+		// Check that the new ViewData is not null
+		if (viewData == null)
+			return;
+
+		if (!updateChanges)
+		{
+			++_viewVersion;
+			_view.setViewData(viewData);
+			return;
+		}
+
+		Runnable setAndUpdate = new Runnable()
+		{
+			public void run()
+			{
+				long start = StallWatchdog.getInstance().begin(StallWatchdog.EventTask, _view, _controllerId);
+				try
+				{
+					int[] changedKeys = viewData.getChangedKeys(_view.getViewData());
+					_view.setViewData(viewData);
+					for (int i = 0; i < changedKeys.length; ++i)
+						dispatchUpdateView(changedKeys[i]);
+				}
+				finally
+				{
+					StallWatchdog.getInstance().end(StallWatchdog.EventTask, _view, _controllerId, start);
+				}
+			}
+		};
+		if (Application.isEventDispatchThread())
+			setAndUpdate.run();
+		else
+			Application.getApplication().invokeLater(setAndUpdate);
+	}
+
+	/**
+	 * The getViewVersion accessor method returns a counter that changes
+	 * whenever the View may show something else, e.g. on updateView or
+	 * when the ViewData is set. It is used to detect stale snapshots.
+	 * 
+	 * @return The version of the View's content
+	 */
+	int getViewVersion()
+	{
+		return _viewVersion;
+	}
+
+	/**
+	 * The isInitialized accessor method returns whether the Controller
+	 * was initialized or its ViewData was restored.
+	 * 
+	 * @return True once initialize or restoreViewData was called
+	 */
+	boolean isInitialized()
+	{
+		return _initialized;
+	}
+
+	/**
+	 * The restoreViewData method is used by the Navigator to pass 
+	 * ViewData that was saved in a navigation snapshot to the Controller.
+	 * It is used instead of initialize when the application resumes.
+	 * 
+	 * @param viewData The restored ViewDataHashtable
+	 */
+	public void restoreViewData(ViewDataHashtable viewData)
+	{
+		_initialized = true;
+		++_viewVersion;
+		onRestoreViewData(viewData);
+	}
+
+	/**
+	 * The onRestoreViewData method is only used internally by the
+	 * restoreViewData method. By default it sets the restored ViewData,
+	 * Controllers can override it to rebuild anything that was not saved.
+	 * 
+	 * @param viewData The restored ViewDataHashtable
+	 */
+	protected void onRestoreViewData(ViewDataHashtable viewData)
+	{
+		setViewData(viewData);
 	}
 
 	/**
@@ -155,6 +519,66 @@ public abstract class Controller
 			_view.getViewData().setModel(model);
 	}
 
+	/**
+	 * The bindModel method subscribes the Controller's ViewDataBinding to
+	 * a Model. From then on the Model's notifications update the ViewData
+	 * and the View without any code in the Controller. A previously bound
+	 * Model is unbound. The Model only keeps a weak reference to the 
+	 * binding, it stays bound as long as the Controller is used.
+	 * 
+	 * @param model The Model to bind
+	 */
+	public void bindModel(Model model)
+	{
+		unbindModel();
+		if (model == null)
+			return;
+
+		ViewDataBinding binding = ViewDataBinding.forController(this);
+		if (binding == null)
+			return;
+		_binder = new ViewDataBinder(this, binding);
+		_boundModel = model;
+		_boundModel.addWeakModelListener(_binder);
+	}
+
+	/**
+	 * The unbindModel method unsubscribes the ViewDataBinding from the
+	 * bound Model.
+	 * 
+	 */
+	public void unbindModel()
+	{
+		if (_boundModel != null)
+			_boundModel.removeModelListener(_binder);
+		_boundModel = null;
+		_binder = null;
+	}
+
+	/**
+	 * The getBoundModel accessor method returns the Model that is bound
+	 * with bindModel.
+	 * 
+	 * @return The bound Model, null if there is none
+	 */
+	Model getBoundModel()
+	{
+		return _boundModel;
+	}
+
+	/**
+	 * The onCreateBinding method is used by bindModel to declare which
+	 * model notifications are copied into which ViewData entries. It is
+	 * only called once per Controller class, the bindings must not 
+	 * depend on the instance.
+	 * 
+	 * @return The ViewDataBinding, null if the Controller has none
+	 */
+	protected ViewDataBinding onCreateBinding()
+	{
+		return null;
+	}
+
 	/**
 	 * getControllerId is an accessor method for the Controller's id
 	 * 
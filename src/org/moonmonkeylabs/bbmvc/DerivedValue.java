@@ -0,0 +1,38 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+/**
+ * The DerivedValue interface computes a ViewData entry from other
+ * entries, e.g. a formatted total or a filtered count. It is added
+ * to a ViewDataHashtable with the keys it depends on.
+ * 
+ * @version 1.0
+ */
+public interface DerivedValue
+{
+	/**
+	 * The compute method is invoked when the derived entry is read and
+	 * one of the entries it depends on changed since it was last computed.
+	 * 
+	 * @param viewData The ViewDataHashtable the inputs are read from
+	 * @return The value of the entry, null if there is none
+	 */
+	public abstract Object compute(ViewDataHashtable viewData);
+}
@@ -0,0 +1,47 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import net.rim.device.api.system.Bitmap;
+import net.rim.device.api.system.Display;
+import net.rim.device.api.ui.Screen;
+
+/**
+ * The DisplayScreenCapturer class captures the screen by taking a
+ * screenshot of the display.
+ * 
+ * @version 1.0
+ */
+public final class DisplayScreenCapturer implements ScreenCapturer
+{
+	/**
+	 * The capture method takes a screenshot of the display.
+	 * 
+	 * @param screen The Screen on top of the display stack
+	 * @return The captured Bitmap, null if the screen is not displayed
+	 */
+	public Bitmap capture(Screen screen)
+	{
+		if (!screen.isDisplayed())
+			return null;
+		Bitmap bitmap = new Bitmap(Display.getWidth(), Display.getHeight());
+		Display.screenshot(bitmap);
+		return bitmap;
+	}
+}
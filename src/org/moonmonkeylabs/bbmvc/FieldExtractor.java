@@ -0,0 +1,36 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+/**
+ * The FieldExtractor interface reads the field of an item that an
+ * index of an IndexedCollectionModel is built on.
+ * 
+ * @version 1.0
+ */
+public interface FieldExtractor
+{
+	/**
+	 * The extract method returns the value of the indexed field.
+	 * 
+	 * @param item The item
+	 * @return The value of the field, null if the item is not indexed
+	 */
+	public abstract Object extract(Object item);
+}
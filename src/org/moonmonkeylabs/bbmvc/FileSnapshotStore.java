@@ -0,0 +1,130 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.microedition.io.Connector;
+import javax.microedition.io.file.FileConnection;
+
+import net.rim.device.api.io.IOUtilities;
+
+/**
+ * The FileSnapshotStore class keeps the navigation snapshot in a 
+ * local file. It is a stand-in for the PersistentSnapshotStore that
+ * makes it easy to inspect, replace or delete the snapshot while 
+ * testing on the simulator.
+ * 
+ * @version 1.0
+ */
+public final class FileSnapshotStore implements SnapshotStore
+{
+	private String _url;
+
+	/**
+	 * A constructor that takes the file's URL
+	 * 
+	 * @param url A file URL, e.g. file:///SDCard/snapshot.bin
+	 */
+	public FileSnapshotStore(String url)
+	{
+		_url = url;
+	}
+
+	/**
+	 * The load method returns the last saved snapshot record.
+	 * 
+	 * @return The snapshot record, null if the file does not exist
+	 * @throws IOException Thrown if the file cannot be read
+	 */
+	public synchronized byte[] load() throws IOException
+	{
+		FileConnection file = (FileConnection) Connector.open(_url, Connector.READ);
+		try
+		{
+			if (!file.exists())
+				return null;
+			InputStream in = file.openInputStream();
+			try
+			{
+				return IOUtilities.streamToBytes(in);
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		finally
+		{
+			file.close();
+		}
+	}
+
+	/**
+	 * The save method replaces the content of the file.
+	 * 
+	 * @param data The snapshot record
+	 * @throws IOException Thrown if the file cannot be written
+	 */
+	public synchronized void save(byte[] data) throws IOException
+	{
+		FileConnection file = (FileConnection) Connector.open(_url, Connector.READ_WRITE);
+		try
+		{
+			if (!file.exists())
+				file.create();
+			else
+				file.truncate(0);
+			OutputStream out = file.openOutputStream();
+			try
+			{
+				out.write(data);
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+		finally
+		{
+			file.close();
+		}
+	}
+
+	/**
+	 * The clear method deletes the file.
+	 * 
+	 * @throws IOException Thrown if the file cannot be deleted
+	 */
+	public synchronized void clear() throws IOException
+	{
+		FileConnection file = (FileConnection) Connector.open(_url, Connector.READ_WRITE);
+		try
+		{
+			if (file.exists())
+				file.delete();
+		}
+		finally
+		{
+			file.close();
+		}
+	}
+}
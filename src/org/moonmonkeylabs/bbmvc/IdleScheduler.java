@@ -0,0 +1,273 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import java.util.Vector;
+
+import net.rim.device.api.system.Application;
+
+/**
+ * The IdleScheduler class runs queued IdleTasks in small time slices 
+ * on the event thread while the application is idle. Each slice is 
+ * posted to the end of the event queue, so pending events are always
+ * processed first. Input and navigation preempt the scheduler, the 
+ * next slice only runs once there was no activity for the idle delay.
+ * 
+ * @version 1.0
+ */
+public final class IdleScheduler implements Runnable
+{
+	private Vector _tasks;
+	private long _sliceTime;
+	private long _idleDelay;
+	private long _sliceDeadline;
+	private long _lastActivity;
+	private int _pendingId;
+
+	private int _numSlices;
+	private int _numPreemptions;
+	private long _lastSliceTime;
+	private long _maxSliceTime;
+	private long _totalSliceTime;
+
+	/**
+	 * Default constructor for IdleScheduler. Slices take up to 20ms
+	 * and start 250ms after the last activity.
+	 * 
+	 */
+	public IdleScheduler()
+	{
+		_tasks = new Vector();
+		_sliceTime = 20;
+		_idleDelay = 250;
+		_pendingId = -1;
+	}
+
+	/**
+	 * The setSliceTime mutator sets how long a slice may run.
+	 * 
+	 * @param sliceTime The slice time in milliseconds
+	 */
+	public synchronized void setSliceTime(long sliceTime)
+	{
+		_sliceTime = sliceTime;
+	}
+
+	/**
+	 * The setIdleDelay mutator sets how long the application has to be 
+	 * without input or navigation before the next slice runs.
+	 * 
+	 * @param idleDelay The idle delay in milliseconds
+	 */
+	public synchronized void setIdleDelay(long idleDelay)
+	{
+		_idleDelay = idleDelay;
+	}
+
+	/**
+	 * The schedule method adds a task to the end of the queue. It can be
+	 * called from any thread.
+	 * 
+	 * @param task The IdleTask
+	 */
+	public synchronized void schedule(IdleTask task)
+	{
+		if (!_tasks.contains(task))
+			_tasks.addElement(task);
+		scheduleSlice(_idleDelay);
+	}
+
+	/**
+	 * The cancel method removes a task from the queue.
+	 * 
+	 * @param task The IdleTask
+	 */
+	public synchronized void cancel(IdleTask task)
+	{
+		_tasks.removeElement(task);
+	}
+
+	/**
+	 * The preempt method is called on input and navigation. The running
+	 * slice yields and the next slice is delayed by the idle delay.
+	 * 
+	 */
+	public synchronized void preempt()
+	{
+		_lastActivity = System.currentTimeMillis();
+		_sliceDeadline = 0;
+		if (_pendingId != -1)
+		{
+			Application.getApplication().cancelInvokeLater(_pendingId);
+			_pendingId = -1;
+			++_numPreemptions;
+		}
+		if (!_tasks.isEmpty())
+			scheduleSlice(_idleDelay);
+	}
+
+	/**
+	 * The shouldYield method tells a running task if the slice is over.
+	 * 
+	 * @return True if the task has to return
+	 */
+	public boolean shouldYield()
+	{
+		return System.currentTimeMillis() >= _sliceDeadline;
+	}
+
+	/**
+	 * The run method runs a single slice on the event thread and must 
+	 * not be called directly. A task that throws is dropped, the slice
+	 * ends and the failure is rethrown once the next slice was scheduled,
+	 * so that the remaining tasks still run.
+	 * 
+	 */
+	public void run()
+	{
+		long start = System.currentTimeMillis();
+		synchronized (this)
+		{
+			_pendingId = -1;
+			if (_tasks.isEmpty())
+				return;
+			// Wait until the application has been idle long enough
+			long idle = start - _lastActivity;
+			if (idle < _idleDelay)
+			{
+				scheduleSlice(_idleDelay - idle);
+				return;
+			}
+			_sliceDeadline = start + _sliceTime;
+		}
+
+		Throwable failure = null;
+		while (failure == null && !shouldYield())
+		{
+			IdleTask task;
+			synchronized (this)
+			{
+				if (_tasks.isEmpty())
+					break;
+				task = (IdleTask) _tasks.elementAt(0);
+			}
+
+			boolean moreWork = false;
+			try
+			{
+				moreWork = task.run(this);
+			}
+			catch (Throwable t)
+			{
+				failure = t;
+			}
+			synchronized (this)
+			{
+				// Unfinished tasks go to the end of the queue so that all tasks make progress
+				if (_tasks.removeElement(task) && moreWork)
+					_tasks.addElement(task);
+			}
+		}
+
+		synchronized (this)
+		{
+			_lastSliceTime = System.currentTimeMillis() - start;
+			_totalSliceTime += _lastSliceTime;
+			if (_lastSliceTime > _maxSliceTime)
+				_maxSliceTime = _lastSliceTime;
+			++_numSlices;
+			if (!_tasks.isEmpty())
+				scheduleSlice(0);
+		}
+
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException) failure;
+		if (failure instanceof Error)
+			throw (Error) failure;
+		if (failure != null)
+			throw new RuntimeException(failure.toString());
+	}
+
+	/**
+	 * The getQueueDepth accessor method returns the number of queued tasks.
+	 * 
+	 * @return The number of tasks
+	 */
+	public synchronized int getQueueDepth()
+	{
+		return _tasks.size();
+	}
+
+	/**
+	 * The getSliceCount accessor method returns the number of slices run so far.
+	 * 
+	 * @return The number of slices
+	 */
+	public synchronized int getSliceCount()
+	{
+		return _numSlices;
+	}
+
+	/**
+	 * The getPreemptionCount accessor method returns how often a scheduled
+	 * slice was preempted by input or navigation.
+	 * 
+	 * @return The number of preemptions
+	 */
+	public synchronized int getPreemptionCount()
+	{
+		return _numPreemptions;
+	}
+
+	/**
+	 * The getLastSliceTime accessor method returns how long the last slice ran.
+	 * 
+	 * @return The time in milliseconds
+	 */
+	public synchronized long getLastSliceTime()
+	{
+		return _lastSliceTime;
+	}
+
+	/**
+	 * The getMaxSliceTime accessor method returns how long the longest slice ran.
+	 * 
+	 * @return The time in milliseconds
+	 */
+	public synchronized long getMaxSliceTime()
+	{
+		return _maxSliceTime;
+	}
+
+	/**
+	 * The getTotalSliceTime accessor method returns how long all slices ran.
+	 * 
+	 * @return The time in milliseconds
+	 */
+	public synchronized long getTotalSliceTime()
+	{
+		return _totalSliceTime;
+	}
+
+	private void scheduleSlice(long delay)
+	{
+		if (_pendingId == -1)
+			_pendingId = Application.getApplication().invokeLater(this, Math.max(delay, 1), false);
+	}
+}
@@ -0,0 +1,37 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+/**
+ * The IdleTask interface is used for low-priority work that is run by
+ * the IdleScheduler in small time slices on the event thread.
+ * 
+ * @version 1.0
+ */
+public interface IdleTask
+{
+	/**
+	 * The run method does a part of the task's work. It should check
+	 * shouldYield regularly and return as soon as it is true.
+	 * 
+	 * @param scheduler The IdleScheduler that runs the task
+	 * @return True if work is left and the task should be run again, false if it is done
+	 */
+	public abstract boolean run(IdleScheduler scheduler);
+}
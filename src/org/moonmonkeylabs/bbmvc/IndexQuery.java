@@ -0,0 +1,87 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+/**
+ * The IndexQuery class describes a query on an index of an
+ * IndexedCollectionModel: all items whose field equals a value, lies
+ * in a range or starts with a prefix. Equality queries can use hash
+ * or sorted indexes, range and prefix queries need a sorted index.
+ * 
+ * @version 1.0
+ */
+public final class IndexQuery
+{
+	static final int Equal = 1;
+	static final int Range = 2;
+	static final int Prefix = 3;
+
+	final int type;
+	final int indexId;
+	final Object from;
+	final Object to;
+
+	private IndexQuery(int type, int indexId, Object from, Object to)
+	{
+		this.type = type;
+		this.indexId = indexId;
+		this.from = from;
+		this.to = to;
+	}
+
+	/**
+	 * The equal static method creates a query for all items whose field
+	 * equals a value.
+	 * 
+	 * @param indexId The id of the index
+	 * @param value The value
+	 * @return The IndexQuery
+	 */
+	public static IndexQuery equal(int indexId, Object value)
+	{
+		return new IndexQuery(Equal, indexId, value, null);
+	}
+
+	/**
+	 * The range static method creates a query for all items whose field
+	 * lies between two values, both included.
+	 * 
+	 * @param indexId The id of a sorted index
+	 * @param from The lowest value, null for no lower bound
+	 * @param to The highest value, null for no upper bound
+	 * @return The IndexQuery
+	 */
+	public static IndexQuery range(int indexId, Object from, Object to)
+	{
+		return new IndexQuery(Range, indexId, from, to);
+	}
+
+	/**
+	 * The prefix static method creates a query for all items whose String
+	 * field starts with a prefix.
+	 * 
+	 * @param indexId The id of a sorted index on a String field
+	 * @param prefix The prefix
+	 * @return The IndexQuery
+	 */
+	public static IndexQuery prefix(int indexId, String prefix)
+	{
+		return new IndexQuery(Prefix, indexId, prefix, null);
+	}
+}
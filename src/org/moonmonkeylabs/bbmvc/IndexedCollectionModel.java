@@ -0,0 +1,694 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import java.util.Enumeration;
+import java.util.Hashtable;
+
+import net.rim.device.api.util.Comparator;
+import net.rim.device.api.util.IntEnumeration;
+import net.rim.device.api.util.IntHashtable;
+import net.rim.device.api.util.IntVector;
+
+/**
+ * The IndexedCollectionModel class is a Model that holds a collection
+ * of items by id and keeps secondary indexes on chosen fields of the
+ * items. A hash index answers equality queries, a sorted index also
+ * answers range and prefix queries with a binary search. The indexes
+ * are updated incrementally when items are inserted, updated or removed.
+ * 
+ * A query can be made active. Its result is kept up to date and every
+ * change of it is sent to the ModelListeners as QueryResultChanged with
+ * the arguments int[] added and int[] removed, so that a filtered list
+ * only has to apply the delta. The deltas are sent from a background
+ * thread, one after another in the order the changes were made.
+ * 
+ * @version 1.0
+ */
+public class IndexedCollectionModel extends Model
+{
+	public static final int QueryResultChanged = 3001;
+
+	private IntHashtable _items;
+	private IntHashtable _indexes;
+	private IndexQuery _activeQuery;
+	private IntHashtable _activeResult;
+	private IntVector _added;
+	private IntVector _removed;
+	private int _batchDepth;
+	private SerialWorker _notifier;
+
+	/**
+	 * Default constructor for IndexedCollectionModel
+	 * 
+	 */
+	public IndexedCollectionModel()
+	{
+		_items = new IntHashtable();
+		_indexes = new IntHashtable();
+		_added = new IntVector();
+		_removed = new IntVector();
+	}
+
+	/**
+	 * The addHashIndex method adds an index for equality queries. The
+	 * existing items are indexed right away.
+	 * 
+	 * @param indexId The id of the index
+	 * @param extractor The FieldExtractor that reads the indexed field
+	 */
+	public synchronized void addHashIndex(int indexId, FieldExtractor extractor)
+	{
+		addIndex(indexId, new HashIndex(extractor));
+	}
+
+	/**
+	 * The addSortedIndex method adds an index for equality, range and
+	 * prefix queries. The existing items are indexed right away.
+	 * 
+	 * @param indexId The id of the index
+	 * @param extractor The FieldExtractor that reads the indexed field
+	 * @param comparator The order of the field's values, null for the natural order of Strings and numbers
+	 */
+	public synchronized void addSortedIndex(int indexId, FieldExtractor extractor, Comparator comparator)
+	{
+		addIndex(indexId, new SortedIndex(extractor, comparator));
+	}
+
+	/**
+	 * The removeIndex method removes an index.
+	 * 
+	 * @param indexId The id of the index
+	 */
+	public synchronized void removeIndex(int indexId)
+	{
+		_indexes.remove(indexId);
+	}
+
+	/**
+	 * The insert method adds an item or replaces the item with the same id.
+	 * 
+	 * @param id The id of the item
+	 * @param item The item - cannot be NULL
+	 * @throws IllegalArgumentException Thrown if a field of a sorted index cannot be ordered, the model is left unchanged
+	 */
+	public void insert(int id, Object item)
+	{
+		if (item == null)
+			return;
+		synchronized (this)
+		{
+			// All values are checked first, so that a failure does not leave the indexes half updated
+			Enumeration indexes = _indexes.elements();
+			while (indexes.hasMoreElements())
+				((Index) indexes.nextElement()).validate(item);
+
+			Object previous = _items.put(id, item);
+			indexes = _indexes.elements();
+			while (indexes.hasMoreElements())
+			{
+				Index index = (Index) indexes.nextElement();
+				if (previous != null)
+					index.remove(id);
+				index.add(id, item);
+			}
+			updateActiveResult(id, item);
+		}
+		notifyQueryResultChanged();
+	}
+
+	/**
+	 * The update method re-indexes an item after it changed. The item
+	 * can be the same object that was inserted, the indexes keep the
+	 * previous field values themselves.
+	 * 
+	 * @param id The id of the item
+	 * @param item The item - cannot be NULL
+	 * @throws IllegalArgumentException Thrown if a field of a sorted index cannot be ordered, the model is left unchanged
+	 */
+	public void update(int id, Object item)
+	{
+		insert(id, item);
+	}
+
+	/**
+	 * The remove method removes an item.
+	 * 
+	 * @param id The id of the item
+	 * @return The removed item, null if there was none
+	 */
+	public Object remove(int id)
+	{
+		Object item;
+		synchronized (this)
+		{
+			item = _items.remove(id);
+			if (item == null)
+				return null;
+			Enumeration indexes = _indexes.elements();
+			while (indexes.hasMoreElements())
+				((Index) indexes.nextElement()).remove(id);
+			updateActiveResult(id, null);
+		}
+		notifyQueryResultChanged();
+		return item;
+	}
+
+	/**
+	 * The get method returns an item.
+	 * 
+	 * @param id The id of the item
+	 * @return The item, null if there is none
+	 */
+	public synchronized Object get(int id)
+	{
+		return _items.get(id);
+	}
+
+	/**
+	 * The size method returns the number of items.
+	 * 
+	 * @return The number of items
+	 */
+	public synchronized int size()
+	{
+		return _items.size();
+	}
+
+	/**
+	 * The beginUpdate method starts a batch of changes. The changes of the
+	 * active query's result are sent once the outermost batch ends.
+	 * 
+	 */
+	public synchronized void beginUpdate()
+	{
+		++_batchDepth;
+	}
+
+	/**
+	 * The endUpdate method ends a batch of changes.
+	 * 
+	 */
+	public void endUpdate()
+	{
+		synchronized (this)
+		{
+			if (_batchDepth > 0)
+				--_batchDepth;
+		}
+		notifyQueryResultChanged();
+	}
+
+	/**
+	 * The find method returns the ids of all items that match a query.
+	 * Sorted indexes return the ids in the order of the field.
+	 * 
+	 * @param query The IndexQuery
+	 * @return The ids of the matching items
+	 * @throws Exception Throws an exception if the index does not exist or cannot answer the query, e.g. a prefix query on a field that is not a String
+	 */
+	public synchronized int[] find(IndexQuery query) throws Exception
+	{
+		if (query == null)
+			throw new Exception("Argument is null");
+		IntVector ids = new IntVector();
+		getIndex(query).find(query, ids);
+		return ids.toArray();
+	}
+
+	/**
+	 * The setActiveQuery method sets the query whose result changes are
+	 * sent to the ModelListeners. The difference to the result of the
+	 * previous active query is sent right away.
+	 * 
+	 * @param query The IndexQuery, null to clear the active query
+	 * @throws Exception Throws an exception if the index does not exist or cannot answer the query
+	 */
+	public void setActiveQuery(IndexQuery query) throws Exception
+	{
+		synchronized (this)
+		{
+			IntHashtable result = new IntHashtable();
+			if (query != null)
+			{
+				IntVector ids = new IntVector();
+				getIndex(query).find(query, ids);
+				int numIds = ids.size();
+				for (int i = 0; i < numIds; ++i)
+					result.put(ids.elementAt(i), Boolean.TRUE);
+			}
+
+			if (_activeResult != null)
+			{
+				IntEnumeration previousIds = _activeResult.keys();
+				while (previousIds.hasMoreElements())
+				{
+					int id = previousIds.nextElement();
+					if (!result.containsKey(id))
+						addChange(_removed, _added, id);
+				}
+			}
+			IntEnumeration ids = result.keys();
+			while (ids.hasMoreElements())
+			{
+				int id = ids.nextElement();
+				if (_activeResult == null || !_activeResult.containsKey(id))
+					addChange(_added, _removed, id);
+			}
+			_activeQuery = query;
+			_activeResult = query != null ? result : null;
+		}
+		notifyQueryResultChanged();
+	}
+
+	/**
+	 * The getActiveResult method returns the ids of the items that match
+	 * the active query, in no particular order.
+	 * 
+	 * @return The ids, an empty array if there is no active query
+	 */
+	public synchronized int[] getActiveResult()
+	{
+		if (_activeResult == null)
+			return new int[0];
+		int[] ids = new int[_activeResult.size()];
+		IntEnumeration keys = _activeResult.keys();
+		for (int i = 0; keys.hasMoreElements(); ++i)
+			ids[i] = keys.nextElement();
+		return ids;
+	}
+
+	private void addIndex(int indexId, Index index)
+	{
+		IntEnumeration ids = _items.keys();
+		while (ids.hasMoreElements())
+		{
+			int id = ids.nextElement();
+			index.add(id, _items.get(id));
+		}
+		_indexes.put(indexId, index);
+	}
+
+	private Index getIndex(IndexQuery query) throws Exception
+	{
+		Index index = (Index) _indexes.get(query.indexId);
+		if (index == null)
+			throw new Exception("Index does not exist");
+		if (query.type != IndexQuery.Equal && !(index instanceof SortedIndex))
+			throw new Exception("Index is not sorted");
+		index.check(query);
+		return index;
+	}
+
+	/**
+	 * The updateActiveResult method checks if an item entered or left
+	 * the active query's result.
+	 * 
+	 * @param id The id of the item
+	 * @param item The item, null if it was removed
+	 */
+	private void updateActiveResult(int id, Object item)
+	{
+		if (_activeQuery == null)
+			return;
+
+		Index index = (Index) _indexes.get(_activeQuery.indexId);
+		boolean matches = item != null && index != null && index.matches(_activeQuery, index.extractor.extract(item));
+		boolean matched = _activeResult.containsKey(id);
+		if (matches && !matched)
+		{
+			_activeResult.put(id, Boolean.TRUE);
+			addChange(_added, _removed, id);
+		}
+		else if (!matches && matched)
+		{
+			_activeResult.remove(id);
+			addChange(_removed, _added, id);
+		}
+	}
+
+	private static void addChange(IntVector changes, IntVector opposite, int id)
+	{
+		// An item that left and entered again within a batch did not change
+		int index = opposite.indexOf(id);
+		if (index >= 0)
+			opposite.removeElementAt(index);
+		else
+			changes.addElement(id);
+	}
+
+	/**
+	 * The notifyQueryResultChanged method sends the collected changes of
+	 * the active query's result. The delta is queued while the lock is
+	 * held, so that deltas of concurrent writers are delivered in the
+	 * order they were taken.
+	 * 
+	 */
+	private synchronized void notifyQueryResultChanged()
+	{
+		if (_batchDepth > 0 || (_added.isEmpty() && _removed.isEmpty()))
+			return;
+		final Object[] args = new Object[] { _added.toArray(), _removed.toArray() };
+		_added.removeAllElements();
+		_removed.removeAllElements();
+		if (_notifier == null)
+			_notifier = new SerialWorker();
+		_notifier.execute(new Runnable()
+		{
+			public void run()
+			{
+				notifyModelListeners(QueryResultChanged, args);
+			}
+		});
+	}
+
+	/**
+	 * The compareNatural method compares Strings and numbers.
+	 * 
+	 * @param a The first value
+	 * @param b The second value
+	 * @return A negative number, zero or a positive number if a is less, equal or greater than b
+	 */
+	static int compareNatural(Object a, Object b)
+	{
+		if (a instanceof String && b instanceof String)
+			return ((String) a).compareTo((String) b);
+		if (isNumber(a) && isNumber(b))
+		{
+			long x = toLong(a);
+			long y = toLong(b);
+			return x < y ? -1 : (x == y ? 0 : 1);
+		}
+		throw new IllegalArgumentException("Values cannot be compared without a Comparator");
+	}
+
+	private static boolean isNumber(Object value)
+	{
+		return value instanceof Integer || value instanceof Long;
+	}
+
+	private static long toLong(Object value)
+	{
+		return value instanceof Integer ? ((Integer) value).intValue() : ((Long) value).longValue();
+	}
+
+	/**
+	 * The Index class is the base of the secondary indexes. It remembers
+	 * the indexed value of each item, so that an item can be removed
+	 * from the index after its field changed.
+	 */
+	private static abstract class Index
+	{
+		final FieldExtractor extractor;
+		final IntHashtable values;
+
+		Index(FieldExtractor extractor)
+		{
+			this.extractor = extractor;
+			this.values = new IntHashtable();
+		}
+
+		void add(int id, Object item)
+		{
+			Object value = extractor.extract(item);
+			if (value == null)
+				return;
+			values.put(id, value);
+			addValue(id, value);
+		}
+
+		void remove(int id)
+		{
+			Object value = values.remove(id);
+			if (value != null)
+				removeValue(id, value);
+		}
+
+		abstract void addValue(int id, Object value);
+
+		abstract void removeValue(int id, Object value);
+
+		/**
+		 * The validate method is called before an item is added and throws
+		 * if its value cannot be stored in the index. It does nothing by
+		 * default.
+		 * 
+		 * @param item The item
+		 */
+		void validate(Object item)
+		{
+		}
+
+		/**
+		 * The check method is called before a query is run and throws if
+		 * the index cannot answer it. It does nothing by default.
+		 * 
+		 * @param query The IndexQuery
+		 * @throws Exception Throws an exception if the query does not fit the index
+		 */
+		void check(IndexQuery query) throws Exception
+		{
+		}
+
+		abstract void find(IndexQuery query, IntVector ids);
+
+		abstract boolean matches(IndexQuery query, Object value);
+	}
+
+	/**
+	 * The HashIndex class maps each value to the ids of its items
+	 */
+	private static final class HashIndex extends Index
+	{
+		private final Hashtable _ids;
+
+		HashIndex(FieldExtractor extractor)
+		{
+			super(extractor);
+			_ids = new Hashtable();
+		}
+
+		void addValue(int id, Object value)
+		{
+			IntVector ids = (IntVector) _ids.get(value);
+			if (ids == null)
+			{
+				ids = new IntVector();
+				_ids.put(value, ids);
+			}
+			ids.addElement(id);
+		}
+
+		void removeValue(int id, Object value)
+		{
+			IntVector ids = (IntVector) _ids.get(value);
+			if (ids == null)
+				return;
+			int index = ids.indexOf(id);
+			if (index >= 0)
+				ids.removeElementAt(index);
+			if (ids.isEmpty())
+				_ids.remove(value);
+		}
+
+		void find(IndexQuery query, IntVector result)
+		{
+			IntVector ids = query.from != null ? (IntVector) _ids.get(query.from) : null;
+			if (ids == null)
+				return;
+			int numIds = ids.size();
+			for (int i = 0; i < numIds; ++i)
+				result.addElement(ids.elementAt(i));
+		}
+
+		boolean matches(IndexQuery query, Object value)
+		{
+			return value != null && value.equals(query.from);
+		}
+	}
+
+	/**
+	 * The SortedIndex class keeps the values and ids in arrays that are
+	 * sorted by value. Lookups are binary searches, an insert or remove
+	 * moves the entries behind it with a single array copy.
+	 */
+	private static final class SortedIndex extends Index
+	{
+		private final Comparator _comparator;
+		private Object[] _sortedValues;
+		private int[] _ids;
+		private int _size;
+
+		SortedIndex(FieldExtractor extractor, Comparator comparator)
+		{
+			super(extractor);
+			_comparator = comparator;
+			_sortedValues = new Object[16];
+			_ids = new int[16];
+		}
+
+		void addValue(int id, Object value)
+		{
+			if (_size == _ids.length)
+			{
+				Object[] sortedValues = new Object[_size * 2];
+				int[] ids = new int[_size * 2];
+				System.arraycopy(_sortedValues, 0, sortedValues, 0, _size);
+				System.arraycopy(_ids, 0, ids, 0, _size);
+				_sortedValues = sortedValues;
+				_ids = ids;
+			}
+			// Inserted behind equal values, so they keep the insertion order
+			int index = upperBound(value);
+			System.arraycopy(_sortedValues, index, _sortedValues, index + 1, _size - index);
+			System.arraycopy(_ids, index, _ids, index + 1, _size - index);
+			_sortedValues[index] = value;
+			_ids[index] = id;
+			++_size;
+		}
+
+		void removeValue(int id, Object value)
+		{
+			for (int i = lowerBound(value); i < _size && compare(_sortedValues[i], value) == 0; ++i)
+			{
+				if (_ids[i] == id)
+				{
+					System.arraycopy(_sortedValues, i + 1, _sortedValues, i, _size - i - 1);
+					System.arraycopy(_ids, i + 1, _ids, i, _size - i - 1);
+					--_size;
+					_sortedValues[_size] = null;
+					return;
+				}
+			}
+		}
+
+		void validate(Object item)
+		{
+			Object value = extractor.extract(item);
+			if (value == null)
+				return;
+			// Throws if the value has no order or none that fits the indexed values
+			compare(_size > 0 ? _sortedValues[0] : value, value);
+		}
+
+		void check(IndexQuery query) throws Exception
+		{
+			// The indexed values are all of one kind, the first one stands for all
+			if (_size == 0)
+				return;
+			Object value = _sortedValues[0];
+			if (query.type == IndexQuery.Prefix && !(value instanceof String))
+				throw new Exception("Index is not on a String field");
+			try
+			{
+				if (query.from != null)
+					compare(value, query.from);
+				if (query.to != null)
+					compare(value, query.to);
+			}
+			catch (RuntimeException e)
+			{
+				throw new Exception("Query values cannot be compared with the index");
+			}
+		}
+
+		void find(IndexQuery query, IntVector result)
+		{
+			if (query.from == null && query.type != IndexQuery.Range)
+				return;
+			int start = query.type == IndexQuery.Range && query.from == null ? 0 : lowerBound(query.from);
+			for (int i = start; i < _size; ++i)
+			{
+				if (!matches(query, _sortedValues[i]))
+					break;
+				result.addElement(_ids[i]);
+			}
+		}
+
+		boolean matches(IndexQuery query, Object value)
+		{
+			if (value == null)
+				return false;
+			switch (query.type)
+			{
+				case IndexQuery.Equal:
+					return query.from != null && compare(value, query.from) == 0;
+				case IndexQuery.Range:
+					return (query.from == null || compare(value, query.from) >= 0)
+						&& (query.to == null || compare(value, query.to) <= 0);
+				default:
+					return matchesPrefix(value, (String) query.from);
+			}
+		}
+
+		/**
+		 * The matchesPrefix method compares the start of a value with the
+		 * prefix using the index's order, so that e.g. a case-insensitive
+		 * Comparator also matches prefixes case-insensitively.
+		 * 
+		 * @param value The indexed value
+		 * @param prefix The prefix
+		 * @return True if the value starts with the prefix
+		 */
+		private boolean matchesPrefix(Object value, String prefix)
+		{
+			if (!(value instanceof String) || prefix == null)
+				return false;
+			String string = (String) value;
+			if (string.length() < prefix.length())
+				return false;
+			return compare(string.substring(0, prefix.length()), prefix) == 0;
+		}
+
+		private int lowerBound(Object value)
+		{
+			int low = 0;
+			int high = _size;
+			while (low < high)
+			{
+				int middle = (low + high) >>> 1;
+				if (compare(_sortedValues[middle], value) < 0)
+					low = middle + 1;
+				else
+					high = middle;
+			}
+			return low;
+		}
+
+		private int upperBound(Object value)
+		{
+			int low = 0;
+			int high = _size;
+			while (low < high)
+			{
+				int middle = (low + high) >>> 1;
+				if (compare(_sortedValues[middle], value) <= 0)
+					low = middle + 1;
+				else
+					high = middle;
+			}
+			return low;
+		}
+
+		private int compare(Object a, Object b)
+		{
+			return _comparator != null ? _comparator.compare(a, b) : compareNatural(a, b);
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import java.lang.ref.WeakReference;
+import java.util.Vector;
+
+/**
+ * The Listeners class has helper methods for listener Vectors that 
+ * can hold both strong and weak listener registrations. A weak 
+ * registration does not keep the listener alive - once the listener 
+ * has been garbage collected its entry is removed during the next
+ * dispatch. The listener's owner therefore has to keep a reference
+ * to the listener for as long as it should receive events.
+ * 
+ * @version 1.0
+ */
+public final class Listeners
+{
+	private Listeners()
+	{
+	}
+
+	/**
+	 * The add method adds a listener if it is not already registered.
+	 * 
+	 * @param listeners The listener Vector
+	 * @param listener The listener to be added
+	 * @param weak True to only keep a weak reference to the listener
+	 */
+	public static void add(Vector listeners, Object listener, boolean weak)
+	{
+		synchronized (listeners)
+		{
+			if (indexOf(listeners, listener) == -1)
+				listeners.addElement(weak ? new WeakReference(listener) : listener);
+		}
+	}
+
+	/**
+	 * The remove method removes a listener, no matter how it was registered.
+	 * 
+	 * @param listeners The listener Vector
+	 * @param listener The listener to be removed
+	 */
+	public static void remove(Vector listeners, Object listener)
+	{
+		synchronized (listeners)
+		{
+			int index = indexOf(listeners, listener);
+			if (index != -1)
+				listeners.removeElementAt(index);
+		}
+	}
+
+	/**
+	 * The getListeners method returns the listeners that are still alive
+	 * and removes the entries of collected listeners. Since a copy is 
+	 * returned, listeners can be added or removed during the dispatch.
+	 * 
+	 * @param listeners The listener Vector
+	 * @return The live listeners in the order they were added
+	 */
+	public static Object[] getListeners(Vector listeners)
+	{
+		synchronized (listeners)
+		{
+			int numListener = listeners.size();
+			Object[] live = new Object[numListener];
+			int numLive = 0;
+			for (int i = 0; i < numListener; ++i)
+			{
+				Object listener = resolve(listeners.elementAt(i));
+				if (listener != null)
+					live[numLive++] = listener;
+			}
+
+			// Remove the entries of collected listeners
+			if (numLive < numListener)
+			{
+				for (int i = numListener - 1; i >= 0; --i)
+				{
+					if (resolve(listeners.elementAt(i)) == null)
+						listeners.removeElementAt(i);
+				}
+				Object[] trimmed = new Object[numLive];
+				System.arraycopy(live, 0, trimmed, 0, numLive);
+				live = trimmed;
+			}
+			return live;
+		}
+	}
+
+	private static int indexOf(Vector listeners, Object listener)
+	{
+		int numListener = listeners.size();
+		for (int i = 0; i < numListener; ++i)
+		{
+			if (resolve(listeners.elementAt(i)) == listener)
+				return i;
+		}
+		return -1;
+	}
+
+	private static Object resolve(Object entry)
+	{
+		if (entry instanceof WeakReference)
+			return ((WeakReference) entry).get();
+		return entry;
+	}
+}
@@ -0,0 +1,328 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import net.rim.device.api.util.IntEnumeration;
+import net.rim.device.api.util.IntHashtable;
+
+/**
+ * The MemoryAccountant class estimates the memory a Controller retains:
+ * the entries of its ViewData, its Model and the Model's listener
+ * registrations. The device offers no way to measure the heap an
+ * object graph uses, so the sizes are estimates from the object
+ * layout. Strings, boxed values, arrays, Vectors, Hashtables and
+ * ViewDataHashtables are estimated by the accountant, application
+ * types by the SizeEstimators that are added for them. Other objects
+ * are counted with the size of an empty object.
+ * 
+ * Within one measurement every object is only counted once, so
+ * shared and cyclic references are not counted twice. Objects that
+ * are shared by several Controllers are counted for each of them.
+ * 
+ * @version 1.0
+ */
+public final class MemoryAccountant
+{
+	public static final int ObjectSize = 12;
+	public static final int ArraySize = 16;
+	public static final int ReferenceSize = 4;
+	private static final int EntrySize = ObjectSize + 3 * ReferenceSize;
+	private static final int MaxDepth = 32;
+	private static final Object NoEstimator = new Object();
+
+	private Vector _types;
+	private Vector _estimators;
+	private Hashtable _resolved;
+	private IntHashtable _visited;
+	private int _depth;
+
+	/**
+	 * Default constructor for MemoryAccountant
+	 * 
+	 */
+	public MemoryAccountant()
+	{
+		_types = new Vector();
+		_estimators = new Vector();
+		_resolved = new Hashtable();
+	}
+
+	/**
+	 * The addEstimator method adds a SizeEstimator for a type. It is
+	 * used for the type and its subclasses, if several estimators
+	 * apply, the one that was added last is used.
+	 * 
+	 * @param type The class or interface
+	 * @param estimator The SizeEstimator
+	 * @throws Exception Throws an exception if an argument is null
+	 */
+	public synchronized void addEstimator(Class type, SizeEstimator estimator) throws Exception
+	{
+		if (type == null || estimator == null)
+			throw new Exception("Argument is null");
+		_types.addElement(type);
+		_estimators.addElement(estimator);
+		_resolved.clear();
+	}
+
+	/**
+	 * The estimateController method estimates the memory a Controller
+	 * retains through its ViewData, its Model and the listener
+	 * registrations of the Model.
+	 * 
+	 * @param controller The Controller
+	 * @return The estimated size in bytes
+	 */
+	public synchronized int estimateController(Controller controller)
+	{
+		_visited = new IntHashtable();
+		try
+		{
+			int size = ObjectSize + sizeOf(controller.getViewData());
+			Object model = controller.getModel();
+			size += sizeOf(model) + sizeOfListeners(model);
+			Model boundModel = controller.getBoundModel();
+			if (boundModel != model)
+				size += sizeOf(boundModel) + sizeOfListeners(boundModel);
+			return size;
+		}
+		finally
+		{
+			_visited = null;
+		}
+	}
+
+	/**
+	 * The estimate method estimates the memory an object retains.
+	 * 
+	 * @param object The object
+	 * @return The estimated size in bytes, 0 for null
+	 */
+	public synchronized int estimate(Object object)
+	{
+		_visited = new IntHashtable();
+		try
+		{
+			return sizeOf(object);
+		}
+		finally
+		{
+			_visited = null;
+		}
+	}
+
+	/**
+	 * The sizeOf method is used by SizeEstimators to add the size of a
+	 * referenced object to the current measurement. An object that was
+	 * already counted adds nothing.
+	 * 
+	 * @param object The referenced object
+	 * @return The estimated size in bytes, 0 if it was already counted
+	 */
+	public synchronized int sizeOf(Object object)
+	{
+		if (_visited == null)
+			return estimate(object);
+		if (object == null || !visit(object))
+			return 0;
+		// Very deep structures are cut off instead of overflowing the stack
+		if (_depth >= MaxDepth)
+			return ObjectSize;
+
+		++_depth;
+		try
+		{
+			SizeEstimator estimator = getEstimator(object.getClass());
+			if (estimator != null)
+				return estimator.estimateSize(object, this);
+			return estimateDefault(object);
+		}
+		finally
+		{
+			--_depth;
+		}
+	}
+
+	/**
+	 * The sizeOfListeners method estimates the listener registrations of
+	 * a Model, the listeners themselves belong to their owners.
+	 * 
+	 * @param model The Model
+	 * @return The estimated size in bytes
+	 */
+	private static int sizeOfListeners(Object model)
+	{
+		if (!(model instanceof Model))
+			return 0;
+		// Each registration can be a WeakReference
+		return ((Model) model).getModelListenerCount() * (ReferenceSize + ObjectSize);
+	}
+
+	private SizeEstimator getEstimator(Class type)
+	{
+		Object estimator = _resolved.get(type);
+		if (estimator == null)
+		{
+			estimator = NoEstimator;
+			for (int i = _types.size() - 1; i >= 0; --i)
+			{
+				if (((Class) _types.elementAt(i)).isAssignableFrom(type))
+				{
+					estimator = _estimators.elementAt(i);
+					break;
+				}
+			}
+			_resolved.put(type, estimator);
+		}
+		return estimator != NoEstimator ? (SizeEstimator) estimator : null;
+	}
+
+	/**
+	 * The estimateDefault method estimates the types the accountant knows.
+	 * 
+	 * @param object The object
+	 * @return The estimated size in bytes
+	 */
+	private int estimateDefault(Object object)
+	{
+		if (object instanceof String)
+			return ObjectSize + 3 * ReferenceSize + ArraySize + 2 * ((String) object).length();
+		if (object instanceof Integer || object instanceof Boolean || object instanceof Character
+			|| object instanceof Short || object instanceof Byte || object instanceof Float)
+			return ObjectSize + 4;
+		if (object instanceof Long || object instanceof Double)
+			return ObjectSize + 8;
+		if (object instanceof Object[])
+		{
+			Object[] array = (Object[]) object;
+			int size = ArraySize + array.length * ReferenceSize;
+			for (int i = 0; i < array.length; ++i)
+				size += sizeOf(array[i]);
+			return size;
+		}
+		if (object instanceof byte[])
+			return ArraySize + ((byte[]) object).length;
+		if (object instanceof boolean[])
+			return ArraySize + ((boolean[]) object).length;
+		if (object instanceof char[])
+			return ArraySize + 2 * ((char[]) object).length;
+		if (object instanceof short[])
+			return ArraySize + 2 * ((short[]) object).length;
+		if (object instanceof int[])
+			return ArraySize + 4 * ((int[]) object).length;
+		if (object instanceof float[])
+			return ArraySize + 4 * ((float[]) object).length;
+		if (object instanceof long[])
+			return ArraySize + 8 * ((long[]) object).length;
+		if (object instanceof double[])
+			return ArraySize + 8 * ((double[]) object).length;
+		if (object instanceof ViewDataHashtable)
+		{
+			// The stored entries are read, derived entries are not computed
+			ViewDataHashtable viewData = (ViewDataHashtable) object;
+			int size = ObjectSize + ArraySize + viewData.size() * EntrySize;
+			IntEnumeration keys = viewData.keys();
+			while (keys.hasMoreElements())
+				size += sizeOf(viewData.getEntry(keys.nextElement()));
+			return size;
+		}
+		if (object instanceof IntHashtable)
+		{
+			IntHashtable table = (IntHashtable) object;
+			int size = ObjectSize + ArraySize + table.size() * EntrySize;
+			Enumeration values = table.elements();
+			while (values.hasMoreElements())
+				size += sizeOf(values.nextElement());
+			return size;
+		}
+		if (object instanceof Hashtable)
+		{
+			Hashtable table = (Hashtable) object;
+			int size = ObjectSize + ArraySize + table.size() * EntrySize;
+			Enumeration keys = table.keys();
+			while (keys.hasMoreElements())
+			{
+				Object key = keys.nextElement();
+				size += sizeOf(key) + sizeOf(table.get(key));
+			}
+			return size;
+		}
+		if (object instanceof Vector)
+		{
+			Vector vector = (Vector) object;
+			int size = ObjectSize + ArraySize + vector.capacity() * ReferenceSize;
+			for (int i = vector.size() - 1; i >= 0; --i)
+				size += sizeOf(vector.elementAt(i));
+			return size;
+		}
+		return ObjectSize;
+	}
+
+	/**
+	 * The visit method marks an object as counted. Objects are compared
+	 * by identity, not by equals.
+	 * 
+	 * @param object The object
+	 * @return True if the object was not counted yet
+	 */
+	private boolean visit(Object object)
+	{
+		int hash = System.identityHashCode(object);
+		Object entry = _visited.get(hash);
+		if (entry == null)
+		{
+			_visited.put(hash, object);
+			return true;
+		}
+		if (entry == object)
+			return false;
+
+		// Objects with the same identity hash share a Vector
+		Vector bucket;
+		if (entry instanceof IdentityBucket)
+			bucket = ((IdentityBucket) entry).objects;
+		else
+		{
+			IdentityBucket newBucket = new IdentityBucket();
+			newBucket.objects.addElement(entry);
+			_visited.put(hash, newBucket);
+			bucket = newBucket.objects;
+		}
+		for (int i = bucket.size() - 1; i >= 0; --i)
+		{
+			if (bucket.elementAt(i) == object)
+				return false;
+		}
+		bucket.addElement(object);
+		return true;
+	}
+
+	/**
+	 * The IdentityBucket class holds the counted objects that share an
+	 * identity hash
+	 */
+	private static final class IdentityBucket
+	{
+		Vector objects = new Vector();
+	}
+}
@@ -54,8 +54,22 @@ public abstract class Model
 	public void addModelListener(final ModelListener modelListener)
 	{
 		// Checks that the listener is not already in the vector
-		if (!_modelListener.contains(modelListener))
-			_modelListener.addElement(modelListener);
+		Listeners.add(_modelListener, modelListener, false);
+	}
+
+	/**
+	 * The addWeakModelListener method adds a ModelListener without keeping
+	 * it alive. Once the listener is only referenced by the Model, it can
+	 * be garbage collected and is dropped during the next notification.
+	 * This way a Controller that is no longer used does not leak through 
+	 * a long-lived Model. The Controller has to keep a reference to the 
+	 * listener itself.
+	 * 
+	 * @param modelListener ModelListener to be added
+	 */
+	public void addWeakModelListener(final ModelListener modelListener)
+	{
+		Listeners.add(_modelListener, modelListener, true);
 	}
 
 	/**
@@ -66,7 +80,18 @@ public abstract class Model
 	 */
 	public void removeModelListener(final ModelListener modelListener)
 	{
-		_modelListener.removeElement(modelListener);
+		Listeners.remove(_modelListener, modelListener);
+	}
+
+	/**
+	 * The getModelListenerCount method returns the number of listeners
+	 * that are still alive.
+	 * 
+	 * @return The number of listeners
+	 */
+	int getModelListenerCount()
+	{
+		return Listeners.getListeners(_modelListener).length;
 	}
 
 	/**
@@ -78,9 +103,18 @@ public abstract class Model
 	 */
 	protected void notifyModelListeners(int key, Object[] args)
 	{
-		int numListener = _modelListener.size();
-		for (int i = numListener -1; i >= 0; --i)
-			notifyModelListener(((ModelListener) _modelListener.elementAt(i)), key, args);
+		NavigationTraceRecorder.getInstance().record(NavigationTraceRecorder.ModelNotification, key);
+		long start = SpanRecorder.getInstance().begin();
+		try
+		{
+			Object[] listeners = Listeners.getListeners(_modelListener);
+			for (int i = listeners.length - 1; i >= 0; --i)
+				notifyModelListener(((ModelListener) listeners[i]), key, args);
+		}
+		finally
+		{
+			SpanRecorder.getInstance().end("Model.notifyModelListeners", "model", key, start);
+		}
 	}
 
 	/**
@@ -94,12 +128,29 @@ public abstract class Model
 	 */
 	private void notifyModelListener(final ModelListener modelListener, final int key, final Object[] args)
 	{
-		Application.getApplication().invokeAndWait(new Runnable()
+		final StallWatchdog watchdog = StallWatchdog.getInstance();
+		long waitStart = watchdog.begin(StallWatchdog.ModelNotification, modelListener, 0);
+		try
 		{
-			public void run()
+			Application.getApplication().invokeAndWait(new Runnable()
 			{
-				modelListener.modelChanged(key, args);
-			}
-		});
+				public void run()
+				{
+					long start = watchdog.begin(StallWatchdog.EventTask, modelListener, 0);
+					try
+					{
+						modelListener.modelChanged(key, args);
+					}
+					finally
+					{
+						watchdog.end(StallWatchdog.EventTask, modelListener, 0, start);
+					}
+				}
+			});
+		}
+		finally
+		{
+			watchdog.end(StallWatchdog.ModelNotification, modelListener, 0, waitStart);
+		}
 	}
 }
@@ -0,0 +1,52 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The ModelCodec interface is used by the ViewDataCodec to write and 
+ * read the Model that is referenced by a ViewDataHashtable. Since the
+ * Model is application specific, the application decides how it is 
+ * encoded, e.g. just as an id that is looked up again when it is read.
+ * 
+ * @version 1.0
+ */
+public interface ModelCodec
+{
+	/**
+	 * The writeModel method encodes a Model.
+	 * 
+	 * @param model The Model, never null
+	 * @param out The stream the Model is written to
+	 * @throws IOException Thrown if the Model cannot be written
+	 */
+	public abstract void writeModel(Object model, DataOutputStream out) throws IOException;
+
+	/**
+	 * The readModel method decodes a Model written by writeModel.
+	 * 
+	 * @param in The stream the Model is read from
+	 * @return The Model
+	 * @throws IOException Thrown if the Model cannot be read
+	 */
+	public abstract Object readModel(DataInputStream in) throws IOException;
+}
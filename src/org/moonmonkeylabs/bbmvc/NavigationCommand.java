@@ -0,0 +1,65 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+/**
+ * The NavigationCommand class is a navigation call that was posted
+ * to the Navigator's command queue.
+ * 
+ * @version 1.0
+ */
+final class NavigationCommand
+{
+	static final int Navigate = 1;
+	static final int GoBack = 2;
+	static final int RemoveController = 3;
+
+	final int type;
+	final int controllerId;
+	final Object[] parameters;
+
+	/**
+	 * A constructor that takes the command's type and arguments
+	 * 
+	 * @param type Navigate, GoBack or RemoveController
+	 * @param controllerId The id of the Controller, 0 for GoBack
+	 * @param parameters The parameters for the Controller, can be null
+	 */
+	NavigationCommand(int type, int controllerId, Object[] parameters)
+	{
+		this.type = type;
+		this.controllerId = controllerId;
+		this.parameters = parameters;
+	}
+
+	/**
+	 * The isRedundantAfter method checks if this command has no effect when
+	 * it is applied right after another command. A navigate to the Controller
+	 * that was just navigated to does nothing and a Controller can only be
+	 * removed once.
+	 * 
+	 * @param previous The command before this one
+	 * @return True if this command can be dropped
+	 */
+	boolean isRedundantAfter(NavigationCommand previous)
+	{
+		return previous.type == type && previous.controllerId == controllerId
+			&& (type == Navigate || type == RemoveController);
+	}
+}
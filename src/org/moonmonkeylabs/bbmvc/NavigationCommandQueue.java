@@ -0,0 +1,148 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import java.util.Vector;
+
+import net.rim.device.api.system.Application;
+
+/**
+ * The NavigationCommandQueue class lets any thread post navigation
+ * calls to the Navigator. Posting only appends the command and, for
+ * the first command of a batch, schedules a single drain on the event
+ * thread. The drain takes the whole batch at once, drops redundant 
+ * commands and applies the rest in order. Failures are reported to
+ * the Navigator's NavigationErrorListener once the batch was applied.
+ * 
+ * @version 1.0
+ */
+final class NavigationCommandQueue implements Runnable
+{
+	private Navigator _navigator;
+	private Vector _commands;
+	private boolean _drainScheduled;
+
+	/**
+	 * A constructor that takes the Navigator the commands are applied to
+	 * 
+	 * @param navigator The Navigator
+	 */
+	NavigationCommandQueue(Navigator navigator)
+	{
+		_navigator = navigator;
+		_commands = new Vector();
+	}
+
+	/**
+	 * The post method adds a command to the queue. It can be called
+	 * from any thread.
+	 * 
+	 * @param command The NavigationCommand
+	 */
+	void post(NavigationCommand command)
+	{
+		synchronized (this)
+		{
+			_commands.addElement(command);
+			if (_drainScheduled)
+				return;
+			_drainScheduled = true;
+		}
+		Application.getApplication().invokeLater(this);
+	}
+
+	/**
+	 * The run method drains the queue on the event thread and must not
+	 * be called directly.
+	 * 
+	 */
+	public void run()
+	{
+		Vector batch;
+		synchronized (this)
+		{
+			batch = _commands;
+			_commands = new Vector();
+			_drainScheduled = false;
+		}
+
+		NavigationCommand previous = null;
+		Vector failed = null;
+		Vector failures = null;
+		int numCommands = batch.size();
+		for (int i = 0; i < numCommands; ++i)
+		{
+			NavigationCommand command = (NavigationCommand) batch.elementAt(i);
+			if (previous != null && command.isRedundantAfter(previous))
+				continue;
+			Exception failure = apply(command);
+			if (failure != null)
+			{
+				if (failed == null)
+				{
+					failed = new Vector();
+					failures = new Vector();
+				}
+				failed.addElement(command);
+				failures.addElement(failure);
+			}
+			previous = command;
+		}
+
+		// The rest of the batch is applied before the failures are reported
+		if (failed != null)
+		{
+			for (int i = 0; i < failed.size(); ++i)
+			{
+				NavigationCommand command = (NavigationCommand) failed.elementAt(i);
+				_navigator.reportError(command.controllerId, (Exception) failures.elementAt(i));
+			}
+		}
+	}
+
+	/**
+	 * The apply method applies a single command.
+	 * 
+	 * @param command The NavigationCommand
+	 * @return The Exception the command failed with, null if it succeeded
+	 */
+	private Exception apply(NavigationCommand command)
+	{
+		try
+		{
+			switch (command.type)
+			{
+				case NavigationCommand.Navigate:
+					_navigator.navigate(command.controllerId, command.parameters);
+					break;
+				case NavigationCommand.GoBack:
+					_navigator.goBack(command.parameters);
+					break;
+				case NavigationCommand.RemoveController:
+					_navigator.removeController(command.controllerId);
+					break;
+			}
+		}
+		catch (Exception e)
+		{
+			return e;
+		}
+		return null;
+	}
+}
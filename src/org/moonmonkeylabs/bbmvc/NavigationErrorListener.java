@@ -0,0 +1,38 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+/**
+ * The NavigationErrorListener interface receives the navigation
+ * failures that have no caller to throw to, e.g. of navigation calls
+ * that were posted to the Navigator's command queue.
+ * 
+ * @version 1.0
+ */
+public interface NavigationErrorListener
+{
+	/**
+	 * The navigationFailed method is called on the event thread when a
+	 * navigation failed.
+	 * 
+	 * @param controllerId The id of the Controller, 0 if the failure does not belong to one
+	 * @param exception The Exception that was thrown
+	 */
+	public abstract void navigationFailed(int controllerId, Exception exception);
+}
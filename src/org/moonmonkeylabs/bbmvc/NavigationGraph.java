@@ -0,0 +1,236 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The NavigationGraph class holds a navigation graph that was compiled
+ * by the NavigationGraphCompiler build tool in tools/src: the Controller
+ * ids, the class names of their factories, their default parameters and
+ * the allowed edges. It is read straight into sorted arrays, lookups
+ * are binary searches.
+ * 
+ * The binary descriptor starts with the magic number and version,
+ * followed by the number of Controllers and for each of them the id,
+ * the factory class name, the default parameters and the targets of
+ * its edges. The Controllers are sorted by id.
+ * 
+ * @version 1.0
+ */
+final class NavigationGraph
+{
+	// The NavigationGraphCompiler writes the same constants
+	static final int Magic = 0x4E415647;
+	static final int Version = 1;
+	static final int StringTag = 1;
+	static final int IntTag = 2;
+
+	private int[] _ids;
+	private String[] _factories;
+	private Object[][] _defaultParameters;
+	private int[] _edgeStarts;
+	private int[] _edgeTargets;
+
+	private NavigationGraph()
+	{
+	}
+
+	/**
+	 * The read static method reads a compiled navigation graph.
+	 * 
+	 * @param in The InputStream of the binary descriptor
+	 * @return The NavigationGraph
+	 * @throws IOException Thrown if the descriptor is malformed
+	 */
+	static NavigationGraph read(InputStream in) throws IOException
+	{
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != Magic)
+			throw new IOException("Not a navigation graph");
+		if (data.readUnsignedByte() != Version)
+			throw new IOException("Unsupported navigation graph version");
+
+		NavigationGraph graph = new NavigationGraph();
+		int numControllers = ViewDataCodec.readVarInt(data);
+		int numEdges = ViewDataCodec.readVarInt(data);
+		if (numControllers < 0 || numEdges < 0)
+			throw new IOException("Malformed navigation graph");
+		// The arrays are grown while reading, so that a corrupt count hits the
+		// end of the stream before it allocates more than the stream holds
+		int capacity = Math.min(numControllers, ViewDataCodec.ReadChunk);
+		graph._ids = new int[capacity];
+		graph._factories = new String[capacity];
+		graph._defaultParameters = new Object[capacity][];
+		graph._edgeStarts = new int[capacity + 1];
+		graph._edgeTargets = new int[Math.min(numEdges, ViewDataCodec.ReadChunk)];
+
+		int edge = 0;
+		for (int i = 0; i < numControllers; ++i)
+		{
+			if (i == graph._ids.length)
+			{
+				int grown = Math.min(numControllers, i * 2);
+				graph._ids = (int[]) ViewDataCodec.grow(graph._ids, i, new int[grown]);
+				graph._factories = (String[]) ViewDataCodec.grow(graph._factories, i, new String[grown]);
+				graph._defaultParameters = (Object[][]) ViewDataCodec.grow(graph._defaultParameters, i, new Object[grown][]);
+				graph._edgeStarts = (int[]) ViewDataCodec.grow(graph._edgeStarts, i, new int[grown + 1]);
+			}
+			graph._ids[i] = ViewDataCodec.readVarInt(data);
+			if (i > 0 && graph._ids[i] <= graph._ids[i - 1])
+				throw new IOException("Controllers are not sorted");
+			String factory = data.readUTF();
+			graph._factories[i] = factory.length() > 0 ? factory : null;
+
+			int numParameters = ViewDataCodec.readVarInt(data);
+			if (numParameters < 0)
+				throw new IOException("Malformed navigation graph");
+			if (numParameters > 0)
+			{
+				Object[] parameters = new Object[Math.min(numParameters, ViewDataCodec.ReadChunk)];
+				for (int j = 0; j < numParameters; ++j)
+				{
+					if (j == parameters.length)
+						parameters = (Object[]) ViewDataCodec.grow(parameters, j, new Object[Math.min(numParameters, j * 2)]);
+					int tag = data.readUnsignedByte();
+					if (tag == StringTag)
+						parameters[j] = data.readUTF();
+					else if (tag == IntTag)
+						parameters[j] = new Integer(ViewDataCodec.readVarInt(data));
+					else
+						throw new IOException("Unknown parameter tag " + tag);
+				}
+				graph._defaultParameters[i] = parameters;
+			}
+
+			graph._edgeStarts[i] = edge;
+			int numTargets = ViewDataCodec.readVarInt(data);
+			if (numTargets < 0 || edge + numTargets > numEdges)
+				throw new IOException("Malformed navigation graph");
+			for (int j = 0; j < numTargets; ++j)
+			{
+				if (edge == graph._edgeTargets.length)
+					graph._edgeTargets = (int[]) ViewDataCodec.grow(graph._edgeTargets, edge, new int[Math.min(numEdges, edge * 2)]);
+				graph._edgeTargets[edge++] = ViewDataCodec.readVarInt(data);
+			}
+		}
+		graph._edgeStarts[numControllers] = edge;
+		return graph;
+	}
+
+	/**
+	 * The size method returns the number of Controllers in the graph.
+	 * 
+	 * @return The number of Controllers
+	 */
+	int size()
+	{
+		return _ids.length;
+	}
+
+	/**
+	 * The getControllerId accessor method returns the id of a Controller.
+	 * 
+	 * @param index The index of the Controller
+	 * @return The id
+	 */
+	int getControllerId(int index)
+	{
+		return _ids[index];
+	}
+
+	/**
+	 * The getFactory accessor method returns the class name of a
+	 * Controller's factory.
+	 * 
+	 * @param index The index of the Controller
+	 * @return The class name, null if the Controller is added in code
+	 */
+	String getFactory(int index)
+	{
+		return _factories[index];
+	}
+
+	/**
+	 * The contains method checks if a Controller is in the graph.
+	 * 
+	 * @param controllerId The id of the Controller
+	 * @return True if the Controller is in the graph
+	 */
+	boolean contains(int controllerId)
+	{
+		return indexOf(controllerId) >= 0;
+	}
+
+	/**
+	 * The getDefaultParameters accessor method returns the parameters a
+	 * Controller is initialized with when navigate passes none.
+	 * 
+	 * @param controllerId The id of the Controller
+	 * @return The parameters, null if there are none
+	 */
+	Object[] getDefaultParameters(int controllerId)
+	{
+		int index = indexOf(controllerId);
+		return index >= 0 ? _defaultParameters[index] : null;
+	}
+
+	/**
+	 * The isEdgeAllowed method checks if a navigate from one Controller to
+	 * another is allowed. A Controller without edges can navigate anywhere
+	 * and every Controller can navigate to itself.
+	 * 
+	 * @param fromId The id of the current Controller
+	 * @param toId The id of the target Controller
+	 * @return True if the navigate is allowed
+	 */
+	boolean isEdgeAllowed(int fromId, int toId)
+	{
+		if (fromId == toId)
+			return true;
+		int index = indexOf(fromId);
+		if (index < 0 || _edgeStarts[index] == _edgeStarts[index + 1])
+			return true;
+		for (int i = _edgeStarts[index]; i < _edgeStarts[index + 1]; ++i)
+		{
+			if (_edgeTargets[i] == toId)
+				return true;
+		}
+		return false;
+	}
+
+	private int indexOf(int controllerId)
+	{
+		int low = 0;
+		int high = _ids.length - 1;
+		while (low <= high)
+		{
+			int middle = (low + high) >>> 1;
+			if (_ids[middle] < controllerId)
+				low = middle + 1;
+			else if (_ids[middle] > controllerId)
+				high = middle - 1;
+			else
+				return middle;
+		}
+		return -1;
+	}
+}
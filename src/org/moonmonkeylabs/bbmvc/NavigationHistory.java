@@ -168,6 +168,21 @@ public final class NavigationHistory
 		return null;
 	}
 
+	/**
+	 * The getControllers accessor method returns all Controllers 
+	 * in the history in the order they were added, oldest first
+	 * 
+	 * @return An array of the Controllers in the NavigationHistory
+	 */
+	public Controller[] getControllers()
+	{
+		int historySize = _navigationHistory.size();
+		Controller[] controllers = new Controller[historySize];
+		for (int i = 0; i < historySize; ++i)
+			controllers[i] = ((NavigationHistoryItem) _navigationHistory.elementAt(i)).getController();
+		return controllers;
+	}
+
 	/**
 	 * The getBeforeCurrent accessor method is used in special
 	 * cases where one needs to know the Controller before the 
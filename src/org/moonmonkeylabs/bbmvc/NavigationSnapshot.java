@@ -0,0 +1,172 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Vector;
+
+import net.rim.device.api.util.IntVector;
+
+/**
+ * The NavigationSnapshot class is the binary record that the Navigator
+ * saves to a SnapshotStore. It holds the controller ids of the
+ * NavigationHistory in order, oldest first, and for each of them the
+ * ViewDataHashtable encoded by a ViewDataCodec. The ViewData records 
+ * are only decoded when they are needed.
+ * 
+ * @version 1.0
+ */
+final class NavigationSnapshot
+{
+	private static final int Magic = 0x42424D53;
+	private static final byte Version = 2;
+
+	private IntVector _controllerIds;
+	private Vector _viewDataRecords;
+
+	/**
+	 * Default constructor for an empty NavigationSnapshot
+	 * 
+	 */
+	NavigationSnapshot()
+	{
+		_controllerIds = new IntVector();
+		_viewDataRecords = new Vector();
+	}
+
+	/**
+	 * The add method appends a Controller's id and its encoded ViewData.
+	 * 
+	 * @param controllerId The Controller's id
+	 * @param viewData The Controller's ViewDataHashtable
+	 * @param codec The ViewDataCodec used to encode the ViewData
+	 * @throws IOException Thrown if the ViewData cannot be encoded
+	 */
+	void add(int controllerId, ViewDataHashtable viewData, ViewDataCodec codec) throws IOException
+	{
+		_controllerIds.addElement(controllerId);
+		_viewDataRecords.addElement(codec.encode(viewData));
+	}
+
+	/**
+	 * The size method returns the number of controllers in the snapshot
+	 * 
+	 * @return The number of controllers
+	 */
+	int size()
+	{
+		return _controllerIds.size();
+	}
+
+	/**
+	 * The getControllerId accessor method returns the id at a position
+	 * 
+	 * @param index The position within the history, oldest first
+	 * @return The Controller's id
+	 */
+	int getControllerId(int index)
+	{
+		return _controllerIds.elementAt(index);
+	}
+
+	/**
+	 * The getViewDataRecord accessor method returns the still encoded
+	 * ViewData at a position
+	 * 
+	 * @param index The position within the history, oldest first
+	 * @return The encoded ViewData
+	 */
+	byte[] getViewDataRecord(int index)
+	{
+		return (byte[]) _viewDataRecords.elementAt(index);
+	}
+
+	/**
+	 * The toByteArray method encodes the complete snapshot.
+	 * 
+	 * @return The snapshot record
+	 * @throws IOException Thrown if the snapshot cannot be encoded
+	 */
+	byte[] toByteArray() throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(Magic);
+		out.writeByte(Version);
+		int count = size();
+		out.writeInt(count);
+		for (int i = 0; i < count; ++i)
+		{
+			byte[] record = getViewDataRecord(i);
+			out.writeInt(getControllerId(i));
+			out.writeInt(record.length);
+			out.write(record);
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * The fromByteArray method reads a snapshot record. Only the
+	 * controller ids are decoded, the ViewData records are kept as they are.
+	 * 
+	 * @param data The snapshot record
+	 * @return The NavigationSnapshot
+	 * @throws IOException Thrown if the record is not a valid snapshot
+	 */
+	static NavigationSnapshot fromByteArray(byte[] data) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		if (in.readInt() != Magic || in.readByte() != Version)
+			throw new IOException("Not a navigation snapshot");
+
+		NavigationSnapshot snapshot = new NavigationSnapshot();
+		// Each entry takes at least its id and its length
+		int count = checkLength(in.readInt(), in.available() / 8);
+		for (int i = 0; i < count; ++i)
+		{
+			snapshot._controllerIds.addElement(in.readInt());
+			int length = in.readInt();
+			byte[] record = new byte[checkLength(length, in.available())];
+			in.readFully(record);
+			snapshot._viewDataRecords.addElement(record);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * The checkLength method rejects a length of a corrupt or truncated
+	 * snapshot before anything is allocated for it.
+	 * 
+	 * @param length The length that was read
+	 * @param maxLength The largest length the rest of the record can hold
+	 * @return The length
+	 * @throws IOException Thrown if the length is negative or too large
+	 */
+	private static int checkLength(int length, int maxLength) throws IOException
+	{
+		if (length < 0 || length > maxLength)
+			throw new IOException("Malformed length " + length);
+		return length;
+	}
+}
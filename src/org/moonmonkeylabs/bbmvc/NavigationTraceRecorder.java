@@ -0,0 +1,216 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The NavigationTraceRecorder class records the navigate, goBack and
+ * removeController calls of the Navigator and the keys of all model
+ * notifications together with the time since the previous call. The
+ * compact binary trace of a real session can be replayed with the
+ * NavigationTraceReplayer to benchmark the framework.
+ * 
+ * Each record takes an operation byte, the time delta and the
+ * Controller id or event key as variable length integers, which
+ * is usually three to five bytes. Parameters are not recorded.
+ * 
+ * The recorder is disabled by default. While it is disabled, recording
+ * a call costs a single field check.
+ * 
+ * @version 1.0
+ */
+public final class NavigationTraceRecorder
+{
+	public static final int Navigate = 1;
+	public static final int GoBack = 2;
+	public static final int RemoveController = 3;
+	public static final int ModelNotification = 4;
+
+	static final int Magic = 0x4E415654;
+	static final int Version = 1;
+
+	private static final NavigationTraceRecorder _instance = new NavigationTraceRecorder();
+
+	private boolean _enabled;
+	private boolean _full;
+	private int _maxSize;
+	private long _lastTime;
+	private int _numRecords;
+	private ByteArrayOutputStream _buffer;
+	private DataOutputStream _out;
+
+	/**
+	 * Default constructor for NavigationTraceRecorder
+	 * 
+	 */
+	private NavigationTraceRecorder()
+	{
+		_maxSize = 64 * 1024;
+		_buffer = new ByteArrayOutputStream();
+		_out = new DataOutputStream(_buffer);
+	}
+
+	/**
+	 * The getInstance static method returns the NavigationTraceRecorder instance.
+	 * 
+	 * @return The NavigationTraceRecorder
+	 */
+	public static NavigationTraceRecorder getInstance()
+	{
+		return _instance;
+	}
+
+	/**
+	 * The start method clears the trace and starts recording.
+	 * 
+	 */
+	public synchronized void start()
+	{
+		clear();
+		_enabled = true;
+	}
+
+	/**
+	 * The stop method stops recording. The trace is kept.
+	 * 
+	 */
+	public synchronized void stop()
+	{
+		_enabled = false;
+	}
+
+	/**
+	 * The isRecording accessor method returns if calls are recorded.
+	 * 
+	 * @return True if the recorder is enabled
+	 */
+	public boolean isRecording()
+	{
+		return _enabled;
+	}
+
+	/**
+	 * The isFull accessor method returns if recording stopped because
+	 * the trace reached its maximum size.
+	 * 
+	 * @return True if the trace is full
+	 */
+	public synchronized boolean isFull()
+	{
+		return _full;
+	}
+
+	/**
+	 * The setMaxSize mutator sets the size of the trace in bytes after
+	 * which recording stops.
+	 * 
+	 * @param maxSize The maximum size in bytes
+	 */
+	public synchronized void setMaxSize(int maxSize)
+	{
+		_maxSize = maxSize;
+	}
+
+	/**
+	 * The getRecordCount accessor method returns the number of recorded calls.
+	 * 
+	 * @return The number of records
+	 */
+	public synchronized int getRecordCount()
+	{
+		return _numRecords;
+	}
+
+	/**
+	 * The clear method removes all records.
+	 * 
+	 */
+	public synchronized void clear()
+	{
+		_buffer.reset();
+		_numRecords = 0;
+		_full = false;
+		_lastTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * The toByteArray method returns the trace, which can be passed to
+	 * a NavigationTraceReplayer.
+	 * 
+	 * @return The trace
+	 */
+	public synchronized byte[] toByteArray()
+	{
+		ByteArrayOutputStream trace = new ByteArrayOutputStream(_buffer.size() + 16);
+		DataOutputStream out = new DataOutputStream(trace);
+		try
+		{
+			out.writeInt(Magic);
+			out.writeByte(Version);
+			ViewDataCodec.writeVarInt(_numRecords, out);
+			out.write(_buffer.toByteArray());
+			out.flush();
+		}
+		catch (IOException e)
+		{
+			// Cannot happen for a ByteArrayOutputStream
+		}
+		return trace.toByteArray();
+	}
+
+	/**
+	 * The record method is called by the framework for each call.
+	 * 
+	 * @param operation Navigate, GoBack, RemoveController or ModelNotification
+	 * @param value The Controller id or event key
+	 */
+	void record(int operation, int value)
+	{
+		if (!_enabled)
+			return;
+
+		long now = System.currentTimeMillis();
+		synchronized (this)
+		{
+			if (!_enabled)
+				return;
+			if (_buffer.size() >= _maxSize)
+			{
+				_enabled = false;
+				_full = true;
+				return;
+			}
+			try
+			{
+				_out.writeByte(operation);
+				ViewDataCodec.writeVarInt((int) Math.max(0, now - _lastTime), _out);
+				ViewDataCodec.writeVarInt(value, _out);
+				_lastTime = now;
+				++_numRecords;
+			}
+			catch (IOException e)
+			{
+				// Cannot happen for a ByteArrayOutputStream
+			}
+		}
+	}
+}
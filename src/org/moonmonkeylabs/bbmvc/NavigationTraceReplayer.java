@@ -0,0 +1,312 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import net.rim.device.api.system.Application;
+
+/**
+ * The NavigationTraceReplayer class replays a trace recorded by the
+ * NavigationTraceRecorder and measures the latency of each call. The
+ * trace can be replayed at its original speed, which keeps the pauses
+ * between the calls, or as fast as possible.
+ * 
+ * Navigation calls are applied to a NavigationTraceTarget, usually the
+ * Navigator. Model notifications are passed to an optional ModelListener
+ * with null arguments. As fast as possible, the calls are made on the
+ * calling thread, which has to be the event thread when the target is
+ * the Navigator. At the original speed, each call is posted to the
+ * event thread with its recorded delay, so that input and painting go
+ * on between the calls.
+ * 
+ * @version 1.0
+ */
+public final class NavigationTraceReplayer
+{
+	private static final int NumOperations = 5;
+
+	private int[] _operations;
+	private int[] _delays;
+	private int[] _values;
+	private int[] _counts;
+	private int[] _failures;
+	private long[] _totalTimes;
+	private long[] _maxTimes;
+
+	/**
+	 * A constructor that takes the recorded trace
+	 * 
+	 * @param trace The trace returned by NavigationTraceRecorder.toByteArray
+	 * @throws IOException Thrown if the trace is malformed
+	 */
+	public NavigationTraceReplayer(byte[] trace) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(trace));
+		if (in.readInt() != NavigationTraceRecorder.Magic)
+			throw new IOException("Not a navigation trace");
+		if (in.readUnsignedByte() != NavigationTraceRecorder.Version)
+			throw new IOException("Unsupported trace version");
+
+		int numRecords = ViewDataCodec.readVarInt(in);
+		if (numRecords < 0)
+			throw new IOException("Malformed navigation trace");
+		_operations = new int[numRecords];
+		_delays = new int[numRecords];
+		_values = new int[numRecords];
+		for (int i = 0; i < numRecords; ++i)
+		{
+			_operations[i] = in.readUnsignedByte();
+			if (_operations[i] <= 0 || _operations[i] >= NumOperations)
+				throw new IOException("Unknown operation " + _operations[i]);
+			_delays[i] = ViewDataCodec.readVarInt(in);
+			_values[i] = ViewDataCodec.readVarInt(in);
+		}
+		_counts = new int[NumOperations];
+		_failures = new int[NumOperations];
+		_totalTimes = new long[NumOperations];
+		_maxTimes = new long[NumOperations];
+	}
+
+	/**
+	 * The getRecordCount accessor method returns the number of calls in the trace.
+	 * 
+	 * @return The number of records
+	 */
+	public int getRecordCount()
+	{
+		return _operations.length;
+	}
+
+	/**
+	 * The replay method applies all calls of the trace in order. The
+	 * latencies are added to those of previous replays, so that a trace
+	 * can be replayed several times. A call that throws an exception is
+	 * counted as a failure and the replay continues. A goBack at the root
+	 * of the history is skipped and counted as a failure.
+	 * 
+	 * @param target The target the navigation calls are applied to
+	 * @param modelListener The listener model notifications are passed to, can be null
+	 * @param originalSpeed True to post each call to the event thread after the recorded time, replay then returns right away
+	 */
+	public void replay(NavigationTraceTarget target, ModelListener modelListener, boolean originalSpeed)
+	{
+		replay(target, modelListener, originalSpeed, null);
+	}
+
+	/**
+	 * The replay method applies all calls of the trace in order and runs
+	 * a Runnable once the last call was applied.
+	 * 
+	 * @param target The target the navigation calls are applied to
+	 * @param modelListener The listener model notifications are passed to, can be null
+	 * @param originalSpeed True to post each call to the event thread after the recorded time, replay then returns right away
+	 * @param finished The Runnable that is run after the last call, on the event thread at the original speed, can be null
+	 */
+	public void replay(NavigationTraceTarget target, ModelListener modelListener, boolean originalSpeed, Runnable finished)
+	{
+		if (originalSpeed)
+		{
+			postStep(target, modelListener, 0, finished);
+			return;
+		}
+
+		for (int i = 0; i < _operations.length; ++i)
+			applyStep(target, modelListener, i);
+		if (finished != null)
+			finished.run();
+	}
+
+	/**
+	 * The postStep method posts the next call of the trace to the event
+	 * thread after its recorded delay. Each call posts the one after it.
+	 * 
+	 * @param target The target the navigation calls are applied to
+	 * @param modelListener The listener model notifications are passed to, can be null
+	 * @param index The index of the next record
+	 * @param finished The Runnable that is run after the last call, can be null
+	 */
+	private void postStep(final NavigationTraceTarget target, final ModelListener modelListener, int index, final Runnable finished)
+	{
+		while (index < _operations.length && _operations[index] == NavigationTraceRecorder.ModelNotification && modelListener == null)
+			++index;
+		final int step = index;
+		Runnable runnable = new Runnable()
+		{
+			public void run()
+			{
+				if (step >= _operations.length)
+				{
+					if (finished != null)
+						finished.run();
+					return;
+				}
+				applyStep(target, modelListener, step);
+				postStep(target, modelListener, step + 1, finished);
+			}
+		};
+		long delay = step < _operations.length ? _delays[step] : 0;
+		Application.getApplication().invokeLater(runnable, Math.max(delay, 1), false);
+	}
+
+	/**
+	 * The applyStep method applies a single call of the trace and
+	 * measures it.
+	 * 
+	 * @param target The target the navigation calls are applied to
+	 * @param modelListener The listener model notifications are passed to, can be null
+	 * @param index The index of the record
+	 */
+	private void applyStep(NavigationTraceTarget target, ModelListener modelListener, int index)
+	{
+		int operation = _operations[index];
+		if (operation == NavigationTraceRecorder.ModelNotification && modelListener == null)
+			return;
+
+		long start = System.currentTimeMillis();
+		try
+		{
+			switch (operation)
+			{
+				case NavigationTraceRecorder.Navigate:
+					target.navigate(_values[index]);
+					break;
+				case NavigationTraceRecorder.GoBack:
+					if (!target.canGoBack())
+						throw new Exception("Cannot go back");
+					target.goBack();
+					break;
+				case NavigationTraceRecorder.RemoveController:
+					target.removeController(_values[index]);
+					break;
+				default:
+					modelListener.modelChanged(_values[index], null);
+					break;
+			}
+		}
+		catch (Exception e)
+		{
+			++_failures[operation];
+		}
+		long time = System.currentTimeMillis() - start;
+		++_counts[operation];
+		_totalTimes[operation] += time;
+		if (time > _maxTimes[operation])
+			_maxTimes[operation] = time;
+	}
+
+	/**
+	 * The getCount accessor method returns how often an operation was replayed.
+	 * 
+	 * @param operation One of the NavigationTraceRecorder operations
+	 * @return The number of calls
+	 */
+	public int getCount(int operation)
+	{
+		return _counts[operation];
+	}
+
+	/**
+	 * The getFailureCount accessor method returns how many calls of an
+	 * operation threw an exception.
+	 * 
+	 * @param operation One of the NavigationTraceRecorder operations
+	 * @return The number of failed calls
+	 */
+	public int getFailureCount(int operation)
+	{
+		return _failures[operation];
+	}
+
+	/**
+	 * The getTotalTime accessor method returns the time spent in an operation.
+	 * 
+	 * @param operation One of the NavigationTraceRecorder operations
+	 * @return The total time in milliseconds
+	 */
+	public long getTotalTime(int operation)
+	{
+		return _totalTimes[operation];
+	}
+
+	/**
+	 * The getMaxTime accessor method returns the longest call of an operation.
+	 * 
+	 * @param operation One of the NavigationTraceRecorder operations
+	 * @return The time in milliseconds
+	 */
+	public long getMaxTime(int operation)
+	{
+		return _maxTimes[operation];
+	}
+
+	/**
+	 * The reset method clears the measured latencies.
+	 * 
+	 */
+	public void reset()
+	{
+		for (int i = 0; i < NumOperations; ++i)
+		{
+			_counts[i] = 0;
+			_failures[i] = 0;
+			_totalTimes[i] = 0;
+			_maxTimes[i] = 0;
+		}
+	}
+
+	/**
+	 * The report method returns one line per replayed operation with its
+	 * name, count, failures, total, average and maximum time separated
+	 * by tabs.
+	 * 
+	 * @return The report
+	 */
+	public String report()
+	{
+		StringBuffer buffer = new StringBuffer();
+		for (int i = 1; i < NumOperations; ++i)
+		{
+			if (_counts[i] == 0)
+				continue;
+			buffer.append(getOperationName(i)).append('\t').append(_counts[i]);
+			buffer.append('\t').append(_failures[i]).append('\t').append(_totalTimes[i]);
+			buffer.append('\t').append(_totalTimes[i] / _counts[i]).append('\t').append(_maxTimes[i]);
+			buffer.append('\n');
+		}
+		return buffer.toString();
+	}
+
+	private static String getOperationName(int operation)
+	{
+		switch (operation)
+		{
+			case NavigationTraceRecorder.Navigate:
+				return "navigate";
+			case NavigationTraceRecorder.GoBack:
+				return "goBack";
+			case NavigationTraceRecorder.RemoveController:
+				return "removeController";
+			default:
+				return "modelChanged";
+		}
+	}
+}
@@ -0,0 +1,61 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+/**
+ * The NavigationTraceTarget interface is what a NavigationTraceReplayer
+ * applies the recorded navigation calls to. It is implemented by the
+ * Navigator, a benchmark can provide its own target to measure other
+ * parts of the framework.
+ * 
+ * @version 1.0
+ */
+public interface NavigationTraceTarget
+{
+	/**
+	 * Invoked to replay a recorded navigate call.
+	 * 
+	 * @param controllerId The id of the Controller to navigate to
+	 * @throws Exception Thrown if the navigation fails
+	 */
+	public abstract void navigate(int controllerId) throws Exception;
+
+	/**
+	 * Invoked to replay a recorded goBack call. It is only invoked if
+	 * canGoBack returns true.
+	 * 
+	 */
+	public abstract void goBack();
+
+	/**
+	 * Invoked before a recorded goBack call is replayed. A goBack that
+	 * cannot go back is skipped, since the Navigator would exit.
+	 * 
+	 * @return True if there is a previous screen
+	 */
+	public abstract boolean canGoBack();
+
+	/**
+	 * Invoked to replay a recorded removeController call.
+	 * 
+	 * @param controllerId The id of the Controller to be removed
+	 * @throws Exception Thrown if the Controller cannot be removed
+	 */
+	public abstract void removeController(int controllerId) throws Exception;
+}
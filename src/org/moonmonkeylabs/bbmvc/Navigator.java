@@ -18,6 +18,16 @@
 
 package org.moonmonkeylabs.bbmvc;
 
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import net.rim.device.api.lowmemory.LowMemoryListener;
+import net.rim.device.api.lowmemory.LowMemoryManager;
+import net.rim.device.api.system.Bitmap;
+import net.rim.device.api.system.KeyListener;
+import net.rim.device.api.system.TrackwheelListener;
 import net.rim.device.api.ui.Screen;
 import net.rim.device.api.ui.UiApplication;
 import net.rim.device.api.ui.container.PopupScreen;
@@ -29,10 +39,35 @@ import net.rim.device.api.util.IntHashtable;
  * history and pops and pushes screen on the display stack
  * 
  */
-public final class Navigator extends UiApplication
+public final class Navigator extends UiApplication implements NavigationTraceTarget
 {
+	public static final String DefaultHistory = "default";
+
 	private IntHashtable _controllerCache;
 	private NavigationHistory _history;
+	private String _historyName;
+	private Hashtable _histories;
+	private Vector _recentHistories;
+	private int _warmHistoryCount;
+	private SnapshotStore _snapshotStore;
+	private ViewDataCodec _snapshotCodec;
+	private IntHashtable _pendingViewData;
+	private NavigationCommandQueue _commandQueue;
+	private int _warmHistoryDepth;
+	private ScreenSnapshotCache _snapshotCache;
+	private IdleScheduler _idleScheduler;
+	private IntHashtable _deferredControllers;
+	private ParallelInitializer _parallelInitializer;
+	private RouteTable _routeTable;
+	private NavigationGraph _navigationGraph;
+	private MemoryAccountant _memoryAccountant;
+	private int _controllerMemoryBudget;
+	private NavigationErrorListener _errorListener;
+	private int _pendingNavigateId;
+	private Object[] _pendingNavigateParameters;
+	private boolean _firstNavigate;
+	private boolean _firstFrame;
+	private boolean _trimPending;
 	private static Navigator _instance;
 
 	/**
@@ -42,7 +77,25 @@ public final class Navigator extends UiApplication
 	public Navigator()
 	{
 		_controllerCache = new IntHashtable();
+		_deferredControllers = new IntHashtable();
 		_history = new NavigationHistory();
+		_historyName = DefaultHistory;
+		_histories = new Hashtable();
+		_histories.put(_historyName, _history);
+		_recentHistories = new Vector();
+		_warmHistoryCount = 2;
+		_snapshotCodec = new ViewDataCodec(null, true);
+		_commandQueue = new NavigationCommandQueue(this);
+		_warmHistoryDepth = 1;
+
+		// Controllers that are not visible are asked to release memory when the device runs low
+		LowMemoryManager.addLowMemoryListener(new LowMemoryListener()
+		{
+			public boolean freeStaleObject(int priority)
+			{
+				return postCriticalTrim();
+			}
+		});
 	}
 
 	/**
@@ -55,7 +108,10 @@ public final class Navigator extends UiApplication
 		synchronized (Navigator.class)
 		{
 			if (_instance == null)
+			{
 				_instance = new Navigator();
+				StartupTrace.getInstance().mark("Navigator created");
+			}
 		}
 		return _instance;
 	}
@@ -74,8 +130,12 @@ public final class Navigator extends UiApplication
 		{
 			int controllerId = controller.getControllerId();
 			// Checks if a controller with the same controller id is already in the cache
-			if (!_controllerCache.containsKey(controllerId))
+			if (!_controllerCache.containsKey(controllerId) && !_deferredControllers.containsKey(controllerId))
+			{
 				_controllerCache.put(controllerId, controller);
+				if (!_firstFrame && StartupTrace.getInstance().isEnabled())
+					StartupTrace.getInstance().mark("addController " + controllerId + " " + controller.getView().getClass().getName());
+			}
 			else
 				throw new Exception("Already contrains a conroller with this name");
 		}
@@ -83,6 +143,226 @@ public final class Navigator extends UiApplication
 			throw new Exception("Argument is null");
 	}
 
+	/**
+	 * The addDeferredController method registers a Controller that is only
+	 * built after the first frame was shown, so that it does not delay the
+	 * first screen. The Controller is built right away if the first frame
+	 * was already shown or as soon as it is needed, e.g. by navigate.
+	 * 
+	 * @param controllerId The id of the Controller
+	 * @param factory The ControllerFactory that builds the Controller
+	 * @throws Exception It throws an exception if the factory is null or the id already exists
+	 */
+	public void addDeferredController(int controllerId, ControllerFactory factory) throws Exception
+	{
+		if (factory == null)
+			throw new Exception("Argument is null");
+		if (hasController(controllerId))
+			throw new Exception("Already contrains a conroller with this name");
+
+		_deferredControllers.put(controllerId, factory);
+		if (_firstFrame)
+			buildDeferredController(controllerId);
+	}
+
+	/**
+	 * The addParallelController method registers a Controller that is built
+	 * on a worker thread once startParallelInitialization was called. It
+	 * is only built after the Controllers it depends on, Controllers that
+	 * do not depend on each other are built at the same time. Built
+	 * Controllers are added on the event thread. The Controllers it depends
+	 * on have to be added with addParallelController as well, otherwise
+	 * it fails. A navigate to a Controller that was not started yet builds
+	 * it right away. The event thread never waits for a worker, so a
+	 * navigate to a Controller that a worker is still building completes
+	 * once it was built, unless another navigation came first. Failures
+	 * nobody navigated to are passed to the NavigationErrorListener.
+	 * 
+	 * @param controllerId The id of the Controller
+	 * @param factory The ControllerFactory that builds and initializes the Controller
+	 * @param dependsOn The ids of the Controllers that have to be built first, can be null
+	 * @throws Exception It throws an exception if the factory is null or the id already exists
+	 */
+	public void addParallelController(int controllerId, ControllerFactory factory, int[] dependsOn) throws Exception
+	{
+		if (factory == null)
+			throw new Exception("Argument is null");
+		if (hasController(controllerId))
+			throw new Exception("Already contrains a conroller with this name");
+
+		if (_parallelInitializer == null)
+			_parallelInitializer = new ParallelInitializer(this);
+		_parallelInitializer.add(controllerId, factory, dependsOn);
+	}
+
+	/**
+	 * The startParallelInitialization method starts building the Controllers
+	 * that were added with addParallelController.
+	 * 
+	 * @param numThreads The number of worker threads
+	 */
+	public void startParallelInitialization(int numThreads)
+	{
+		if (_parallelInitializer != null)
+		{
+			StartupTrace.getInstance().mark("parallel initialization");
+			_parallelInitializer.start(numThreads);
+		}
+	}
+
+	/**
+	 * The attachParallelController method adds a Controller that was 
+	 * registered with addParallelController, if the id belongs to one.
+	 * If it is not built yet, it is built first. If a worker is building
+	 * it, it stays registered and is added once onParallelControllerBuilt
+	 * is called for it.
+	 * 
+	 * @param controllerId The id of the Controller
+	 * @throws Exception Throws an exception if the Controller could not be built
+	 */
+	void attachParallelController(int controllerId) throws Exception
+	{
+		if (_parallelInitializer == null || !_parallelInitializer.contains(controllerId))
+			return;
+
+		Controller controller = _parallelInitializer.take(controllerId);
+		// Another caller may have attached it while this one waited
+		if (controller != null && !_controllerCache.containsKey(controllerId))
+			addController(controller);
+	}
+
+	/**
+	 * The onParallelControllerBuilt method is called on the event thread
+	 * once a worker built a parallel Controller or it failed. It adds the
+	 * Controller and finishes a navigation that was waiting for it. A
+	 * failure is passed to the NavigationErrorListener.
+	 * 
+	 * @param controllerId The id of the Controller
+	 */
+	void onParallelControllerBuilt(int controllerId)
+	{
+		boolean navigate = controllerId == _pendingNavigateId;
+		if (navigate)
+			_pendingNavigateId = 0;
+		try
+		{
+			attachParallelController(controllerId);
+			if (navigate)
+				performNavigate(controllerId, _pendingNavigateParameters);
+		}
+		catch (Exception e)
+		{
+			reportError(controllerId, e);
+		}
+		finally
+		{
+			if (navigate)
+				_pendingNavigateParameters = null;
+		}
+	}
+
+	/**
+	 * The isParallelPending method checks if a parallel Controller is
+	 * still being built after it was asked for.
+	 * 
+	 * @param controllerId The id of the Controller
+	 * @return True if the Controller is still registered with the ParallelInitializer
+	 */
+	private boolean isParallelPending(int controllerId)
+	{
+		return _parallelInitializer != null && _parallelInitializer.contains(controllerId);
+	}
+
+	/**
+	 * The buildDeferredController method builds and adds a deferred Controller,
+	 * if the id belongs to one.
+	 * 
+	 * @param controllerId The id of the Controller
+	 * @throws Exception Throws an exception if the factory built a Controller with another id
+	 */
+	private void buildDeferredController(int controllerId) throws Exception
+	{
+		attachParallelController(controllerId);
+		ControllerFactory factory = (ControllerFactory) _deferredControllers.remove(controllerId);
+		if (factory == null)
+			return;
+
+		Controller controller = factory.createController();
+		if (controller == null || controller.getControllerId() != controllerId)
+			throw new Exception("Factory did not create the controller " + controllerId);
+		addController(controller);
+		if (StartupTrace.getInstance().isEnabled())
+			StartupTrace.getInstance().mark("deferred controller " + controllerId);
+	}
+
+	/**
+	 * The onScreenPushed method is called after a Controller's screen was 
+	 * pushed. For the first screen, it waits for the first frame.
+	 * 
+	 * @param controllerId The id of the Controller whose screen was pushed
+	 */
+	private void onScreenPushed(int controllerId)
+	{
+		if (_firstNavigate)
+			return;
+
+		_firstNavigate = true;
+		if (StartupTrace.getInstance().isEnabled())
+			StartupTrace.getInstance().mark("first navigate " + controllerId);
+		invokeLater(new Runnable()
+		{
+			public void run()
+			{
+				onFirstFrame();
+			}
+		});
+	}
+
+	/**
+	 * The onFirstFrame method is run once the first screen was pushed 
+	 * and the events queued before, including its layout and paint, have 
+	 * been processed. The deferred Controllers are then built while the 
+	 * application is idle.
+	 * 
+	 */
+	private void onFirstFrame()
+	{
+		_firstFrame = true;
+		StartupTrace.getInstance().mark("first frame");
+		if (_deferredControllers.isEmpty())
+			return;
+
+		getIdleScheduler().schedule(new IdleTask()
+		{
+			public boolean run(IdleScheduler scheduler)
+			{
+				while (!_deferredControllers.isEmpty())
+				{
+					final int controllerId = _deferredControllers.keys().nextElement();
+					try
+					{
+						buildDeferredController(controllerId);
+					}
+					catch (final Exception e)
+					{
+						// Reported outside of the slice so that a rethrown failure does
+						// not stop the scheduler, the factory was already removed
+						invokeLater(new Runnable()
+						{
+							public void run()
+							{
+								reportError(controllerId, e);
+							}
+						});
+					}
+					if (scheduler.shouldYield())
+						break;
+				}
+				return !_deferredControllers.isEmpty();
+			}
+		});
+	}
+
 	/**
 	 * The removeController methods removes a controller from the controller cache.
 	 * 
@@ -107,16 +387,63 @@ public final class Navigator extends UiApplication
 	 * @throws Exception Throws an exception if the id is zero or the controller is not in the cache
 	 */
 	public void removeController(int controllerId) throws Exception
+	{
+		NavigationTraceRecorder.getInstance().record(NavigationTraceRecorder.RemoveController, controllerId);
+		long start = StallWatchdog.getInstance().begin(StallWatchdog.Navigation, "removeController", controllerId);
+		try
+		{
+			performRemoveController(controllerId);
+		}
+		finally
+		{
+			StallWatchdog.getInstance().end(StallWatchdog.Navigation, "removeController", controllerId, start);
+		}
+	}
+
+	/**
+	 * The performRemoveController method does the actual work of removeController.
+	 * 
+	 * @param controllerId The id of the Controller to be removed.
+	 * @throws Exception Throws an exception if the id is zero or the controller is not in the cache
+	 */
+	private void performRemoveController(int controllerId) throws Exception
 	{
 		if (controllerId != 0)
 		{
+			// A deferred Controller that was not built yet is only unregistered
+			if (_deferredControllers.remove(controllerId) != null)
+			{
+				if (_pendingViewData != null)
+					_pendingViewData.remove(controllerId);
+				return;
+			}
+			attachParallelController(controllerId);
+			// A parallel Controller that a worker is still building is dropped
+			if (isParallelPending(controllerId))
+			{
+				_parallelInitializer.remove(controllerId);
+				if (_pendingNavigateId == controllerId)
+					_pendingNavigateId = 0;
+				if (_pendingViewData != null)
+					_pendingViewData.remove(controllerId);
+				return;
+			}
 			// Checks if the controller is in the controller cache
 			if (_controllerCache.containsKey(controllerId))
 			{
 				// Remove from History first
-				_history.removeController((Controller) _controllerCache.get(controllerId));
+				Controller controller = (Controller) _controllerCache.get(controllerId);
+				Enumeration histories = _histories.elements();
+				while (histories.hasMoreElements())
+					((NavigationHistory) histories.nextElement()).removeController(controller);
+				controller.pause();
+				controller.trimMemory(Controller.TrimMemoryEvicted);
+				if (_snapshotCache != null)
+					_snapshotCache.remove(controllerId);
 				// Last remove the Controller from the cache
 				_controllerCache.remove(controllerId);
+				if (_pendingViewData != null)
+					_pendingViewData.remove(controllerId);
 			}
 			else
 				throw new Exception("Controller does not exist");
@@ -184,8 +511,121 @@ public final class Navigator extends UiApplication
 	 */
 	public void navigate(int controllerId, Object[] parameters) throws Exception
 	{
+		NavigationTraceRecorder.getInstance().record(NavigationTraceRecorder.Navigate, controllerId);
+		long start = StallWatchdog.getInstance().begin(StallWatchdog.Navigation, "navigate", controllerId);
+		try
+		{
+			performNavigate(controllerId, parameters);
+		}
+		finally
+		{
+			StallWatchdog.getInstance().end(StallWatchdog.Navigation, "navigate", controllerId, start);
+		}
+	}
+
+	/**
+	 * The navigate method looks up the route of a path, e.g. from a 
+	 * notification or link, and navigates to its Controller. The route's
+	 * parameters are passed as the initialization parameters, a route
+	 * without parameters navigates like navigate(int).
+	 * 
+	 * @param path The path, e.g. /msg/42/reply
+	 * @throws Exception Throws an exception if no route matches the path or the controller is not in the cache
+	 */
+	public void navigate(String path) throws Exception
+	{
+		RouteMatch match = _routeTable != null ? _routeTable.match(path) : null;
+		if (match == null)
+			throw new Exception("No route for " + path);
+		navigate(match.getControllerId(), match.getParameters());
+	}
+
+	/**
+	 * The addRoute method adds a route to a Controller. Parameters are
+	 * written in braces, {name} is passed as a String and {name:int} 
+	 * as an Integer, e.g. /msg/{id:int}/reply.
+	 * 
+	 * @param pattern The pattern of the route
+	 * @param controllerId The id of the Controller the route leads to
+	 * @throws Exception Throws an exception if the pattern is malformed or already added
+	 */
+	public void addRoute(String pattern, int controllerId) throws Exception
+	{
+		if (_routeTable == null)
+			_routeTable = new RouteTable();
+		_routeTable.add(pattern, controllerId);
+	}
+
+	/**
+	 * The matchRoute method looks up the route of a path without navigating.
+	 * 
+	 * @param path The path
+	 * @return The RouteMatch, null if no route matches
+	 */
+	public RouteMatch matchRoute(String path)
+	{
+		return _routeTable != null ? _routeTable.match(path) : null;
+	}
+
+	/**
+	 * The loadNavigationGraph method loads a navigation graph that was
+	 * compiled by the NavigationGraphCompiler build tool. The factories of
+	 * the graph are instantiated by class name and added as deferred
+	 * Controllers, unless the Controller was already added. Once a graph is loaded,
+	 * navigate only accepts Controllers of the graph and, for Controllers
+	 * that declare edges, only their targets. Controllers navigated to
+	 * without parameters are initialized with their default parameters,
+	 * unless they were already initialized or restored.
+	 * 
+	 * @param in The InputStream of the binary descriptor, e.g. a resource
+	 * @throws Exception Throws an exception if the descriptor is malformed or a factory cannot be instantiated
+	 */
+	public void loadNavigationGraph(InputStream in) throws Exception
+	{
+		if (in == null)
+			throw new Exception("Argument is null");
+
+		NavigationGraph graph = NavigationGraph.read(in);
+		for (int i = 0; i < graph.size(); ++i)
+		{
+			int controllerId = graph.getControllerId(i);
+			String factory = graph.getFactory(i);
+			if (factory != null && !hasController(controllerId))
+				addDeferredController(controllerId, (ControllerFactory) Class.forName(factory).newInstance());
+		}
+		_navigationGraph = graph;
+	}
+
+	/**
+	 * The performNavigate method does the actual work of navigate.
+	 * 
+	 * @param controllerId The id of the Controller to navigate to
+	 * @param parameters Any initialization parameters that need to be passed to the Controller
+	 * @throws Exception Throws an exception if the id is less than zero or the controller is not in the cache
+	 */
+	private void performNavigate(int controllerId, Object[] parameters) throws Exception
+	{
+		preemptIdleWork();
+		// A later navigation replaces one that waits for a parallel Controller
+		_pendingNavigateId = 0;
+		_pendingNavigateParameters = null;
 		if (controllerId > 0)
 		{
+			if (_navigationGraph != null)
+			{
+				if (!_navigationGraph.contains(controllerId))
+					throw new Exception("Controller is not in the navigation graph");
+				Controller currentController = _history.getCurrent();
+				if (currentController != null && !_navigationGraph.isEdgeAllowed(currentController.getControllerId(), controllerId))
+					throw new Exception("Navigation graph has no edge to controller " + controllerId);
+			}
+			buildDeferredController(controllerId);
+			if (isParallelPending(controllerId))
+			{
+				_pendingNavigateId = controllerId;
+				_pendingNavigateParameters = parameters;
+				return;
+			}
 			if (_controllerCache.containsKey(controllerId))
 			{
 				Controller cachedController = (Controller) _controllerCache.get(controllerId);
@@ -193,11 +633,19 @@ public final class Navigator extends UiApplication
 
 				if (cachedController != currentController)
 				{
+					if (currentController != null)
+						currentController.pause();
+					// Restored ViewData is applied first so that parameters override it
+					applyPendingViewData(cachedController);
+					// Default parameters only initialize a Controller the first time, later they would wipe its state
+					if (parameters == null && _navigationGraph != null && !cachedController.isInitialized())
+						parameters = _navigationGraph.getDefaultParameters(controllerId);
 					// Checks to ensure that the parameters are not null
 					if (parameters != null)
 						cachedController.initialize(parameters);
 					// Pushes the new screen on the display stack
 					pushScreen(cachedController.getView().getViewScreen());
+					onScreenPushed(controllerId);
 
 					// The previous screen is poped here because using the navigator, there is the case
 					// where the screen is shown again and if it is already on the stack, this causes 
@@ -212,6 +660,8 @@ public final class Navigator extends UiApplication
 					
 					// Add history
 					_history.add(cachedController);
+					cachedController.resume();
+					trimCoveredController();
 				}
 			}
 			else
@@ -239,27 +689,137 @@ public final class Navigator extends UiApplication
 	 */
 	public void goBack(Object[] parameters)
 	{
+		NavigationTraceRecorder.getInstance().record(NavigationTraceRecorder.GoBack, 0);
+		long start = StallWatchdog.getInstance().begin(StallWatchdog.Navigation, "goBack", 0);
+		try
+		{
+			performGoBack(parameters);
+		}
+		finally
+		{
+			StallWatchdog.getInstance().end(StallWatchdog.Navigation, "goBack", 0, start);
+		}
+	}
+
+	/**
+	 * The performGoBack method does the actual work of goBack.
+	 * 
+	 * @param parameters Any initialization parameters that need to be passed to the Controller
+	 */
+	private void performGoBack(Object[] parameters)
+	{
+		_pendingNavigateId = 0;
+		_pendingNavigateParameters = null;
+		preemptIdleWork();
 		if (_history.canGoBack())
 		{
 			Controller currentController = _history.getCurrent();
 			_history.goBack();
 			Controller controller = _history.getCurrent();
+			applyPendingViewData(controller);
 			// Need to remove the previous screen
 			if (parameters != null)
 				_history.getCurrent().update(parameters);
 			// Because the old/previous screen is always poped in the navigator method, it has 
 			// to be pushed onto the display stack here again. 
 			//pushScreen(controller.getView().getViewScreen());
+			// A history restored from a snapshot only pushes the top screen, the
+			// screens below it are pushed once they are revealed. A screen that
+			// is still on the display stack is shown right away.
+			if (!controller.getView().getViewScreen().isDisplayed())
+			{
+				pushScreen(controller.getView().getViewScreen());
+				showSnapshot(controller);
+			}
 			// Remove the old screen
 			popScreen(currentController.getView().getViewScreen());
+			currentController.pause();
+			currentController.trimMemory(Controller.TrimMemoryEvicted);
+			controller.resume();
 		}
 		else
 		{
+			_history.getCurrent().pause();
 			popScreen(_history.getCurrent().getView().getViewScreen());
 			System.exit(0);
 		}
 	}
 
+	/**
+	 * The canGoBack method checks if goBack navigates to a previous
+	 * screen. At the root of the history goBack exits the application.
+	 * 
+	 * @return True if there is a previous screen
+	 */
+	public boolean canGoBack()
+	{
+		return _history.canGoBack();
+	}
+
+	/**
+	 * The postNavigate method queues a navigate call. Unlike navigate it can 
+	 * be called from any thread, the queued calls are applied in batches on
+	 * the event thread. A navigate to the Controller that was navigated to
+	 * by the previous queued call is dropped.
+	 * 
+	 * @param controllerId The id of the Controller to navigate to
+	 * @param parameters Any initialization parameters that need to be passed to the Controller
+	 */
+	public void postNavigate(int controllerId, Object[] parameters)
+	{
+		_commandQueue.post(new NavigationCommand(NavigationCommand.Navigate, controllerId, parameters));
+	}
+
+	/**
+	 * The postGoBack method queues a goBack call. It can be called from 
+	 * any thread.
+	 * 
+	 * @param parameters Any initialization parameters that need to be passed to the Controller
+	 */
+	public void postGoBack(Object[] parameters)
+	{
+		_commandQueue.post(new NavigationCommand(NavigationCommand.GoBack, 0, parameters));
+	}
+
+	/**
+	 * The postRemoveController method queues a removeController call. 
+	 * It can be called from any thread. A remove of the Controller that
+	 * was removed by the previous queued call is dropped.
+	 * 
+	 * @param controllerId The id of the Controller to be removed
+	 */
+	public void postRemoveController(int controllerId)
+	{
+		_commandQueue.post(new NavigationCommand(NavigationCommand.RemoveController, controllerId, null));
+	}
+
+	/**
+	 * The setNavigationErrorListener mutator sets the listener that 
+	 * receives navigation failures that have no caller, e.g. of posted 
+	 * navigation calls. Without a listener they are rethrown on the 
+	 * event thread.
+	 * 
+	 * @param errorListener The NavigationErrorListener, null to rethrow failures
+	 */
+	public void setNavigationErrorListener(NavigationErrorListener errorListener)
+	{
+		_errorListener = errorListener;
+	}
+
+	/**
+	 * The reportError method passes a failure that has no caller to the
+	 * NavigationErrorListener. It has to be called on the event thread.
+	 * 
+	 * @param controllerId The id of the Controller, 0 if the failure does not belong to one
+	 * @param exception The Exception that was thrown
+	 */
+	void reportError(int controllerId, Exception exception)
+	{
+		if (_errorListener == null)
+			throw new RuntimeException("Navigation failed: " + exception.getMessage());
+		_errorListener.navigationFailed(controllerId, exception);
+	}
+
 	/**
 	 * The hasController method checks if a Controller with
 	 * this id exists in the Controller cache
@@ -269,15 +829,17 @@ public final class Navigator extends UiApplication
 	 */
 	public boolean hasController(int controllerId)
 	{
-		return _controllerCache.containsKey(controllerId);
+		return _controllerCache.containsKey(controllerId) || _deferredControllers.containsKey(controllerId)
+			|| (_parallelInitializer != null && _parallelInitializer.contains(controllerId));
 	}
 
 	/**
 	 * The getController accessor method returns the controller with
-	 * the respective id
+	 * the respective id. Deferred and parallel Controllers are not built
+	 * by it, use hasController to check if such a Controller exists.
 	 * 
 	 * @param controllerId The id of the Controller to be retrieved
-	 * @return A Controller instance if the id is valid, null otherwise
+	 * @return A Controller instance if the id is valid and the Controller was built, null otherwise
 	 */
 	public Controller getController(int controllerId)
 	{
@@ -308,6 +870,10 @@ public final class Navigator extends UiApplication
 		{
 			if (controller.getView().getViewScreen().isDisplayed())
 				popScreen(controller.getView().getViewScreen());
+			controller.pause();
+			controller.trimMemory(Controller.TrimMemoryEvicted);
+			if (_snapshotCache != null)
+				_snapshotCache.remove(controller.getControllerId());
 		}
 	}
 
@@ -326,4 +892,727 @@ public final class Navigator extends UiApplication
 			return beforeCurrent.getControllerId() == controllerId;
 		return false;
 	}
+
+	/**
+	 * The pushScreen method pushes a screen on the display stack.
+	 * 
+	 * @param screen The Screen to be pushed
+	 */
+	public void pushScreen(Screen screen)
+	{
+		long start = SpanRecorder.getInstance().begin();
+		try
+		{
+			super.pushScreen(screen);
+		}
+		finally
+		{
+			SpanRecorder.getInstance().end("Navigator.pushScreen", "navigation", getControllerIdFor(screen), start);
+		}
+	}
+
+	/**
+	 * The popScreen method pops a screen off the display stack.
+	 * 
+	 * @param screen The Screen to be popped
+	 */
+	public void popScreen(Screen screen)
+	{
+		long start = SpanRecorder.getInstance().begin();
+		try
+		{
+			super.popScreen(screen);
+		}
+		finally
+		{
+			SpanRecorder.getInstance().end("Navigator.popScreen", "navigation", getControllerIdFor(screen), start);
+		}
+	}
+
+	/**
+	 * The getControllerIdFor method looks up the Controller that a screen 
+	 * belongs to. It is only used while spans are recorded.
+	 * 
+	 * @param screen The Screen
+	 * @return The Controller's id, 0 if the screen does not belong to a Controller
+	 */
+	private int getControllerIdFor(Screen screen)
+	{
+		if (!SpanRecorder.getInstance().isEnabled())
+			return 0;
+		Enumeration controllers = _controllerCache.elements();
+		while (controllers.hasMoreElements())
+		{
+			Controller controller = (Controller) controllers.nextElement();
+			if (controller.getView().getViewScreen() == screen)
+				return controller.getControllerId();
+		}
+		return 0;
+	}
+
+	/**
+	 * The activate method resumes the current Controller when the
+	 * application comes to the foreground.
+	 * 
+	 */
+	public void activate()
+	{
+		super.activate();
+		Controller currentController = _history.getCurrent();
+		if (currentController != null)
+			currentController.resume();
+	}
+
+	/**
+	 * The deactivate method pauses the current Controller when the
+	 * application goes to the background.
+	 * 
+	 */
+	public void deactivate()
+	{
+		Controller currentController = _history.getCurrent();
+		if (currentController != null)
+			currentController.pause();
+		super.deactivate();
+	}
+
+	/**
+	 * The trimMemory method asks all Controllers except the current one
+	 * to release memory. It has to be called on the event thread.
+	 * 
+	 * @param level Controller.TrimMemoryCovered, TrimMemoryEvicted or TrimMemoryCritical
+	 */
+	public void trimMemory(int level)
+	{
+		Controller currentController = _history.getCurrent();
+		Enumeration controllers = _controllerCache.elements();
+		while (controllers.hasMoreElements())
+		{
+			Controller controller = (Controller) controllers.nextElement();
+			if (controller != currentController)
+				controller.trimMemory(level);
+		}
+		if (_snapshotCache != null && level >= Controller.TrimMemoryCritical)
+			_snapshotCache.clear();
+	}
+
+	/**
+	 * The postCriticalTrim method is called by the LowMemoryManager on its
+	 * own thread. The trim touches the Controllers' state, so it is posted
+	 * to the event thread.
+	 * 
+	 * @return True if a trim was posted, false if there is nothing to release or a trim is already pending
+	 */
+	private boolean postCriticalTrim()
+	{
+		synchronized (this)
+		{
+			if (_trimPending)
+				return false;
+			int numCovered = _controllerCache.size() - (_history.getCurrent() != null ? 1 : 0);
+			if (numCovered <= 0 && (_snapshotCache == null || _snapshotCache.getSize() == 0))
+				return false;
+			_trimPending = true;
+		}
+		invokeLater(new Runnable()
+		{
+			public void run()
+			{
+				synchronized (Navigator.this)
+				{
+					_trimPending = false;
+				}
+				trimMemory(Controller.TrimMemoryCritical);
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * The getMemoryAccountant accessor method returns the MemoryAccountant
+	 * that estimates the Controllers' memory. SizeEstimators for the
+	 * application's types are added to it.
+	 * 
+	 * @return The MemoryAccountant
+	 */
+	public synchronized MemoryAccountant getMemoryAccountant()
+	{
+		if (_memoryAccountant == null)
+			_memoryAccountant = new MemoryAccountant();
+		return _memoryAccountant;
+	}
+
+	/**
+	 * The estimateControllerSize method estimates the memory a Controller
+	 * retains through its ViewData, its Model and the Model's listeners.
+	 * It reads the ViewData and should be called on the event thread.
+	 * 
+	 * @param controllerId The id of the Controller
+	 * @return The estimated size in bytes, -1 if the Controller was not built
+	 */
+	public int estimateControllerSize(int controllerId)
+	{
+		Controller controller = (Controller) _controllerCache.get(controllerId);
+		if (controller == null)
+			return -1;
+		return getMemoryAccountant().estimateController(controller);
+	}
+
+	/**
+	 * The setControllerMemoryBudget mutator sets the memory a single 
+	 * Controller is expected to retain at most.
+	 * 
+	 * @param budget The budget in bytes, 0 for no budget
+	 */
+	public void setControllerMemoryBudget(int budget)
+	{
+		_controllerMemoryBudget = Math.max(0, budget);
+	}
+
+	/**
+	 * The getControllerMemoryBudget accessor returns the memory budget of a Controller.
+	 * 
+	 * @return The budget in bytes, 0 if there is none
+	 */
+	public int getControllerMemoryBudget()
+	{
+		return _controllerMemoryBudget;
+	}
+
+	/**
+	 * The getControllersBySize method returns the built Controllers 
+	 * ordered by their estimated size, the largest first.
+	 * 
+	 * @return The ids of the Controllers
+	 */
+	public int[] getControllersBySize()
+	{
+		int[] ids = new int[_controllerCache.size()];
+		measureControllers(ids, new int[ids.length]);
+		return ids;
+	}
+
+	/**
+	 * The getControllersOverBudget method returns the built Controllers
+	 * whose estimated size exceeds the budget, the largest first.
+	 * 
+	 * @return The ids of the Controllers, empty if there is no budget
+	 */
+	public int[] getControllersOverBudget()
+	{
+		if (_controllerMemoryBudget == 0)
+			return new int[0];
+		int[] ids = new int[_controllerCache.size()];
+		int[] sizes = new int[ids.length];
+		measureControllers(ids, sizes);
+		int numOver = 0;
+		while (numOver < sizes.length && sizes[numOver] > _controllerMemoryBudget)
+			++numOver;
+		int[] over = new int[numOver];
+		System.arraycopy(ids, 0, over, 0, numOver);
+		return over;
+	}
+
+	/**
+	 * The trimMemoryOverBudget method asks the Controllers that exceed
+	 * the budget, except the current one, to release memory.
+	 * 
+	 * @return The number of Controllers that were asked
+	 */
+	public int trimMemoryOverBudget()
+	{
+		Controller currentController = _history.getCurrent();
+		int[] ids = getControllersOverBudget();
+		int numTrimmed = 0;
+		for (int i = 0; i < ids.length; ++i)
+		{
+			Controller controller = (Controller) _controllerCache.get(ids[i]);
+			if (controller != null && controller != currentController)
+			{
+				controller.trimMemory(Controller.TrimMemoryEvicted);
+				++numTrimmed;
+			}
+		}
+		return numTrimmed;
+	}
+
+	/**
+	 * The reportMemory method returns a line for each built Controller
+	 * with its id and estimated size, the largest first. Controllers 
+	 * over the budget are marked.
+	 * 
+	 * @return The report
+	 */
+	public String reportMemory()
+	{
+		int[] ids = new int[_controllerCache.size()];
+		int[] sizes = new int[ids.length];
+		measureControllers(ids, sizes);
+		StringBuffer buffer = new StringBuffer();
+		for (int i = 0; i < ids.length; ++i)
+		{
+			buffer.append(ids[i]).append('\t').append(sizes[i]);
+			if (_controllerMemoryBudget > 0 && sizes[i] > _controllerMemoryBudget)
+				buffer.append("\tover budget");
+			buffer.append('\n');
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * The measureControllers method estimates all built Controllers and
+	 * sorts them by size, the largest first.
+	 * 
+	 * @param ids The array the ids are written to, sized to the number of Controllers
+	 * @param sizes The array the sizes are written to
+	 */
+	private void measureControllers(int[] ids, int[] sizes)
+	{
+		MemoryAccountant accountant = getMemoryAccountant();
+		Enumeration controllers = _controllerCache.elements();
+		for (int i = 0; i < ids.length && controllers.hasMoreElements(); ++i)
+		{
+			Controller controller = (Controller) controllers.nextElement();
+			int id = controller.getControllerId();
+			int size = accountant.estimateController(controller);
+			// Insertion sort, there are only a few Controllers
+			int j = i;
+			while (j > 0 && sizes[j - 1] < size)
+			{
+				ids[j] = ids[j - 1];
+				sizes[j] = sizes[j - 1];
+				--j;
+			}
+			ids[j] = id;
+			sizes[j] = size;
+		}
+	}
+
+	/**
+	 * The setSnapshotCache mutator sets the ScreenSnapshotCache. With a 
+	 * cache, switchHistory captures the outgoing top screen before its
+	 * screens leave the display stack. When goBack or switchHistory has
+	 * to push a screen again, its snapshot is shown right away while the
+	 * screen does its layout.
+	 * Snapshots of Views that changed since they were captured are not
+	 * shown.
+	 * 
+	 * @param snapshotCache The ScreenSnapshotCache, null to disable snapshots
+	 */
+	public void setSnapshotCache(ScreenSnapshotCache snapshotCache)
+	{
+		_snapshotCache = snapshotCache;
+	}
+
+	/**
+	 * The getSnapshotCache accessor method returns the ScreenSnapshotCache.
+	 * 
+	 * @return The ScreenSnapshotCache, null if snapshots are disabled
+	 */
+	public ScreenSnapshotCache getSnapshotCache()
+	{
+		return _snapshotCache;
+	}
+
+	/**
+	 * The showSnapshot method shows the snapshot of a Controller's screen
+	 * on top of the display stack until the pending events, including
+	 * the layout and paint of the screen that was just pushed, have been
+	 * processed.
+	 * 
+	 * @param controller The Controller whose screen was pushed again
+	 */
+	private void showSnapshot(Controller controller)
+	{
+		if (_snapshotCache == null)
+			return;
+		Bitmap snapshot = _snapshotCache.get(controller);
+		if (snapshot == null)
+			return;
+
+		final SnapshotScreen snapshotScreen = new SnapshotScreen(snapshot);
+		pushScreen(snapshotScreen);
+		invokeLater(new Runnable()
+		{
+			public void run()
+			{
+				if (snapshotScreen.isDisplayed())
+					popScreen(snapshotScreen);
+			}
+		});
+	}
+
+	/**
+	 * The getIdleScheduler accessor method returns the IdleScheduler that 
+	 * runs low-priority work while the application is idle. The scheduler
+	 * is created on first use and is preempted by key and trackwheel 
+	 * input as well as by navigation.
+	 * 
+	 * @return The IdleScheduler
+	 */
+	public synchronized IdleScheduler getIdleScheduler()
+	{
+		if (_idleScheduler == null)
+		{
+			_idleScheduler = new IdleScheduler();
+			addKeyListener(new KeyListener()
+			{
+				public boolean keyChar(char key, int status, int time)
+				{
+					return preemptIdleWork();
+				}
+
+				public boolean keyDown(int keycode, int time)
+				{
+					return preemptIdleWork();
+				}
+
+				public boolean keyRepeat(int keycode, int time)
+				{
+					return preemptIdleWork();
+				}
+
+				public boolean keyStatus(int keycode, int time)
+				{
+					return false;
+				}
+
+				public boolean keyUp(int keycode, int time)
+				{
+					return false;
+				}
+			});
+			addTrackwheelListener(new TrackwheelListener()
+			{
+				public boolean trackwheelClick(int status, int time)
+				{
+					return preemptIdleWork();
+				}
+
+				public boolean trackwheelUnclick(int status, int time)
+				{
+					return false;
+				}
+
+				public boolean trackwheelRoll(int amount, int status, int time)
+				{
+					return preemptIdleWork();
+				}
+			});
+		}
+		return _idleScheduler;
+	}
+
+	/**
+	 * The preemptIdleWork method preempts the IdleScheduler, if there is one.
+	 * 
+	 * @return Always false, so that input is still processed
+	 */
+	private boolean preemptIdleWork()
+	{
+		if (_idleScheduler != null)
+			_idleScheduler.preempt();
+		return false;
+	}
+
+	/**
+	 * The switchHistory method makes another named history the active one,
+	 * e.g. when the user switches tabs. Each history has its own back stack,
+	 * navigate and goBack always work on the active one. The switch swaps 
+	 * the history and only pushes the incoming history's top screen, the
+	 * screens below it are pushed once goBack reveals them. The outgoing
+	 * history's screens are popped and its top Controller is paused but
+	 * stays warm, see setWarmHistoryCount. If the switch fails, the
+	 * outgoing history stays the active one.
+	 * 
+	 * @param name The name of the history, it is created if it does not exist
+	 * @param rootControllerId The id of the Controller that is shown if the history is empty
+	 * @throws Exception Throws an exception if the name is null or the history is empty and the root Controller does not exist, cannot be built or is still being built
+	 */
+	public void switchHistory(String name, int rootControllerId) throws Exception
+	{
+		if (name == null)
+			throw new Exception("Argument is null");
+		if (name.equals(_historyName))
+			return;
+
+		NavigationHistory incoming = (NavigationHistory) _histories.get(name);
+		boolean created = incoming == null;
+		if (created)
+			incoming = new NavigationHistory();
+		if (incoming.getCurrent() == null)
+		{
+			// The root is built and checked before anything is changed
+			if (!hasController(rootControllerId))
+				throw new Exception("Controller does not exist");
+			if (_navigationGraph != null && !_navigationGraph.contains(rootControllerId))
+				throw new Exception("Controller is not in the navigation graph");
+			buildDeferredController(rootControllerId);
+			if (isParallelPending(rootControllerId))
+				throw new Exception("Controller " + rootControllerId + " is still being built");
+			if (!_controllerCache.containsKey(rootControllerId))
+				throw new Exception("Controller does not exist");
+		}
+
+		preemptIdleWork();
+		NavigationHistory outgoing = _history;
+		String outgoingName = _historyName;
+		Controller outgoingTop = outgoing.getCurrent();
+		// Captured while it is still shown, its screens are popped below
+		if (outgoingTop != null && _snapshotCache != null
+			&& getActiveScreen() == outgoingTop.getView().getViewScreen()
+			&& !_snapshotCache.isCurrent(outgoingTop))
+			_snapshotCache.capture(outgoingTop);
+		if (outgoingTop != null)
+			outgoingTop.pause();
+		_history = incoming;
+		_historyName = name;
+
+		// The incoming screen is pushed before the outgoing ones are popped so 
+		// that the display stack is never empty
+		try
+		{
+			Controller incomingTop = incoming.getCurrent();
+			if (incomingTop != null)
+			{
+				applyPendingViewData(incomingTop);
+				if (!incomingTop.getView().getViewScreen().isDisplayed())
+				{
+					pushScreen(incomingTop.getView().getViewScreen());
+					showSnapshot(incomingTop);
+				}
+				incomingTop.resume();
+			}
+			else
+				performNavigate(rootControllerId, null);
+		}
+		catch (Exception e)
+		{
+			_history = outgoing;
+			_historyName = outgoingName;
+			if (outgoingTop != null)
+				outgoingTop.resume();
+			throw e;
+		}
+
+		if (created)
+			_histories.put(name, incoming);
+		_recentHistories.removeElement(name);
+		_recentHistories.insertElementAt(outgoingName, 0);
+		Controller[] controllers = outgoing.getControllers();
+		for (int i = controllers.length - 1; i >= 0; --i)
+		{
+			Screen screen = controllers[i].getView().getViewScreen();
+			if (controllers[i] != _history.getCurrent() && screen.isDisplayed())
+				popScreen(screen);
+		}
+		trimInactiveHistories();
+	}
+
+	/**
+	 * The getHistoryName accessor method returns the name of the active history.
+	 * 
+	 * @return The name of the active history
+	 */
+	public String getHistoryName()
+	{
+		return _historyName;
+	}
+
+	/**
+	 * The setWarmHistoryCount mutator sets for how many of the most 
+	 * recently used inactive histories the top Controller is kept warm.
+	 * The top Controllers of the others are asked to trim their memory.
+	 * 
+	 * @param warmHistoryCount The number of warm inactive histories
+	 */
+	public void setWarmHistoryCount(int warmHistoryCount)
+	{
+		if (warmHistoryCount >= 0)
+		{
+			_warmHistoryCount = warmHistoryCount;
+			trimInactiveHistories();
+		}
+	}
+
+	/**
+	 * The trimInactiveHistories method asks the top Controllers of the 
+	 * inactive histories that are not kept warm to trim their memory.
+	 * 
+	 */
+	private void trimInactiveHistories()
+	{
+		int numRecent = _recentHistories.size();
+		for (int i = _warmHistoryCount; i < numRecent; ++i)
+		{
+			NavigationHistory history = (NavigationHistory) _histories.get(_recentHistories.elementAt(i));
+			Controller top = history != null ? history.getCurrent() : null;
+			if (top != null && top != _history.getCurrent())
+				top.trimMemory(Controller.TrimMemoryCovered);
+		}
+	}
+
+	/**
+	 * The setWarmHistoryDepth mutator sets how many Controllers below the
+	 * current one are kept warm. A Controller that is pushed further down 
+	 * the history is asked to trim its memory.
+	 * 
+	 * @param warmHistoryDepth The number of warm Controllers below the current one
+	 */
+	public void setWarmHistoryDepth(int warmHistoryDepth)
+	{
+		if (warmHistoryDepth >= 0)
+			_warmHistoryDepth = warmHistoryDepth;
+	}
+
+	/**
+	 * The trimCoveredController method asks the Controller that was just 
+	 * pushed below the warm part of the history to trim its memory.
+	 * 
+	 */
+	private void trimCoveredController()
+	{
+		Controller[] controllers = _history.getControllers();
+		int index = controllers.length - 2 - _warmHistoryDepth;
+		if (index >= 0)
+			controllers[index].trimMemory(Controller.TrimMemoryCovered);
+	}
+
+	/**
+	 * The setSnapshotStore mutator sets the SnapshotStore that is used
+	 * to save and restore the navigation snapshot.
+	 * 
+	 * @param snapshotStore The SnapshotStore, null to disable snapshots
+	 */
+	public void setSnapshotStore(SnapshotStore snapshotStore)
+	{
+		_snapshotStore = snapshotStore;
+	}
+
+	/**
+	 * The setSnapshotCodec mutator sets the ViewDataCodec that encodes the
+	 * ViewData in navigation snapshots. By default the Model is not saved
+	 * and values of unsupported types are skipped.
+	 * 
+	 * @param snapshotCodec The ViewDataCodec - cannot be NULL
+	 */
+	public void setSnapshotCodec(ViewDataCodec snapshotCodec)
+	{
+		if (snapshotCodec != null)
+			_snapshotCodec = snapshotCodec;
+	}
+
+	/**
+	 * The saveSnapshot method saves the controller ids of the navigation 
+	 * history and each Controller's ViewData to the SnapshotStore. It is 
+	 * usually called when the application is closed or sent to the background.
+	 * 
+	 * @throws Exception Throws an exception if no SnapshotStore is set or the snapshot cannot be saved
+	 */
+	public void saveSnapshot() throws Exception
+	{
+		if (_snapshotStore == null)
+			throw new Exception("No snapshot store");
+
+		NavigationSnapshot snapshot = new NavigationSnapshot();
+		Controller[] controllers = _history.getControllers();
+		for (int i = 0; i < controllers.length; ++i)
+			snapshot.add(controllers[i].getControllerId(), controllers[i].getViewData(), _snapshotCodec);
+		_snapshotStore.save(snapshot.toByteArray());
+	}
+
+	/**
+	 * The restoreSnapshot method rebuilds the navigation history from the 
+	 * SnapshotStore and shows the last screen. The Controllers have to be 
+	 * added before, ids that are no longer in the cache are skipped. The 
+	 * saved ViewData is only decoded and passed to a Controller once its
+	 * screen is shown again, instead of initializing the Controller.
+	 * Deferred and parallel Controllers are not built for the history,
+	 * their ViewData is kept until they are built and shown. Only the 
+	 * last screen is built if it is deferred. If a worker is still
+	 * building it, it is shown once it was built.
+	 * 
+	 * @return True if a snapshot was restored, false if there was none
+	 * @throws Exception Throws an exception if the history is not empty or the snapshot cannot be read
+	 */
+	public boolean restoreSnapshot() throws Exception
+	{
+		if (_snapshotStore == null)
+			throw new Exception("No snapshot store");
+		if (_history.getCurrent() != null)
+			throw new Exception("Navigation history is not empty");
+
+		byte[] data = _snapshotStore.load();
+		if (data == null)
+			return false;
+
+		NavigationSnapshot snapshot = NavigationSnapshot.fromByteArray(data);
+		_pendingViewData = new IntHashtable();
+		Controller topController = null;
+		int pendingTopId = 0;
+		int count = snapshot.size();
+		for (int i = 0; i < count; ++i)
+		{
+			int controllerId = snapshot.getControllerId(i);
+			// Checks if the controller still exists
+			if (!hasController(controllerId))
+				continue;
+			_pendingViewData.put(controllerId, snapshot.getViewDataRecord(i));
+			if (i == count - 1)
+			{
+				buildDeferredController(controllerId);
+				if (isParallelPending(controllerId))
+					pendingTopId = controllerId;
+			}
+			Controller controller = (Controller) _controllerCache.get(controllerId);
+			if (controller != null)
+			{
+				_history.add(controller);
+				topController = controller;
+			}
+		}
+
+		if (topController == null && pendingTopId == 0)
+			return false;
+		if (topController != null)
+		{
+			applyPendingViewData(topController);
+			pushScreen(topController.getView().getViewScreen());
+			onScreenPushed(topController.getControllerId());
+			topController.resume();
+		}
+		// The top Controller is still being built, it is navigated to once it was
+		if (pendingTopId != 0)
+			_pendingNavigateId = pendingTopId;
+		return true;
+	}
+
+	/**
+	 * The applyPendingViewData method decodes the restored ViewData of
+	 * a Controller, if there is any left, and passes it to the Controller.
+	 * 
+	 * @param controller The Controller that is about to be shown
+	 */
+	private void applyPendingViewData(Controller controller)
+	{
+		if (_pendingViewData == null)
+			return;
+
+		byte[] record = (byte[]) _pendingViewData.remove(controller.getControllerId());
+		if (record != null)
+		{
+			try
+			{
+				ViewDataHashtable viewData = _snapshotCodec.decode(record);
+				// Without a ModelCodec the Controller keeps its current Model
+				if (viewData.getModel() == null)
+					viewData.setModel(controller.getModel());
+				controller.restoreViewData(viewData);
+			}
+			catch (Exception e)
+			{
+				// A broken record is dropped and the Controller keeps its current ViewData
+			}
+		}
+	}
 }
@@ -0,0 +1,441 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import java.util.Vector;
+
+import net.rim.device.api.system.Application;
+import net.rim.device.api.util.IntEnumeration;
+import net.rim.device.api.util.IntHashtable;
+import net.rim.device.api.util.IntVector;
+
+/**
+ * The ParallelInitializer class builds Controllers on a pool of worker
+ * threads. Each Controller declares the Controllers it depends on and
+ * is only built once they were built, Controllers that do not depend
+ * on each other are built at the same time. The Navigator attaches the
+ * built Controllers on the event thread.
+ * 
+ * A thread that needs a Controller before the workers got to it builds
+ * it itself instead of waiting. The event thread never waits for a
+ * worker, since a factory may need the event thread itself, e.g. to
+ * notify ModelListeners. If a worker is building the Controller or one
+ * of its dependencies, take returns null on the event thread and the
+ * Navigator is called once the Controller was built.
+ * 
+ * @version 1.0
+ */
+final class ParallelInitializer
+{
+	private static final int Registered = 0;
+	private static final int Building = 1;
+	private static final int Built = 2;
+	private static final int Failed = 3;
+
+	private Navigator _navigator;
+	private IntHashtable _tasks;
+	private IntHashtable _taken;
+	private Vector _ready;
+	private boolean _started;
+	private int _numThreads;
+	private int _numWorkers;
+
+	/**
+	 * A constructor that takes the Navigator the Controllers are attached to
+	 * 
+	 * @param navigator The Navigator
+	 */
+	ParallelInitializer(Navigator navigator)
+	{
+		_navigator = navigator;
+		_tasks = new IntHashtable();
+		_taken = new IntHashtable();
+		_ready = new Vector();
+	}
+
+	/**
+	 * The add method registers a Controller. Its dependencies have to be
+	 * registered with the initializer as well, before the workers are
+	 * started or before this Controller if they already were. A
+	 * dependency that is neither registered nor taken fails the
+	 * Controller.
+	 * 
+	 * @param controllerId The id of the Controller
+	 * @param factory The ControllerFactory that builds the Controller
+	 * @param dependsOn The ids of the Controllers that have to be built first, can be null
+	 */
+	synchronized void add(int controllerId, ControllerFactory factory, int[] dependsOn)
+	{
+		Task task = new Task(controllerId, factory, dependsOn != null ? dependsOn : new int[0]);
+		_tasks.put(controllerId, task);
+		_taken.remove(controllerId);
+		if (!_started)
+			return;
+		schedule(task);
+		// The workers end once they run out of work
+		if (_numWorkers == 0 && !_ready.isEmpty())
+			startWorkers(_numThreads);
+	}
+
+	/**
+	 * The contains method checks if a Controller is registered and was not
+	 * taken yet.
+	 * 
+	 * @param controllerId The id of the Controller
+	 * @return True if the Controller is registered
+	 */
+	synchronized boolean contains(int controllerId)
+	{
+		return _tasks.containsKey(controllerId);
+	}
+
+	/**
+	 * The remove method unregisters a Controller that was not taken yet.
+	 * A worker that is building it finishes, but the Controller is
+	 * dropped. Controllers that depend on it fail.
+	 * 
+	 * @param controllerId The id of the Controller
+	 */
+	synchronized void remove(int controllerId)
+	{
+		Task task = (Task) _tasks.remove(controllerId);
+		if (task != null)
+			_ready.removeElement(task);
+	}
+
+	/**
+	 * The start method starts the worker threads.
+	 * 
+	 * @param numThreads The number of worker threads, at least one is started
+	 */
+	synchronized void start(int numThreads)
+	{
+		if (_started)
+			return;
+		_started = true;
+		_numThreads = Math.max(1, numThreads);
+		IntEnumeration ids = _tasks.keys();
+		while (ids.hasMoreElements())
+			schedule((Task) _tasks.get(ids.nextElement()));
+		startWorkers(_numThreads);
+	}
+
+	private void startWorkers(int numThreads)
+	{
+		for (int i = 0; i < numThreads; ++i)
+		{
+			++_numWorkers;
+			new Thread()
+			{
+				public void run()
+				{
+					Task task;
+					while ((task = takeReadyTask()) != null)
+						build(task);
+				}
+			}.start();
+		}
+	}
+
+	/**
+	 * The take method returns a Controller and unregisters it. If it was
+	 * not built yet, it is built on the calling thread unless a worker
+	 * already started to build it or one of its dependencies. Other
+	 * threads then wait for the worker, the event thread returns null and
+	 * the Controller stays registered.
+	 * 
+	 * @param controllerId The id of the Controller
+	 * @return The Controller, null if it is not registered or still being built by a worker
+	 * @throws Exception Throws an exception if the Controller or one of its dependencies could not be built
+	 */
+	Controller take(int controllerId) throws Exception
+	{
+		Task task = await(controllerId, new IntVector());
+		if (task == null)
+			return null;
+		synchronized (this)
+		{
+			if (task.state != Built && task.state != Failed)
+				return null;
+			// Another caller may have taken or removed it in the meantime
+			if (_tasks.get(controllerId) != task)
+				return null;
+			_tasks.remove(controllerId);
+			_taken.put(controllerId, Boolean.TRUE);
+		}
+		if (task.state == Failed)
+			throw new Exception(task.error);
+		return task.controller;
+	}
+
+	/**
+	 * The await method waits until a Controller was built or failed, its
+	 * dependencies are awaited first. On the event thread it does not
+	 * wait for the workers, the Task is returned while it is still
+	 * registered or building.
+	 * 
+	 * @param controllerId The id of the Controller
+	 * @param path The ids of the Controllers that are awaited by the calling thread
+	 * @return The Task, null if the Controller is not registered or a dependency that was already taken
+	 * @throws Exception Throws an exception if the dependencies form a cycle or a dependency is unknown
+	 */
+	private Task await(int controllerId, IntVector path) throws Exception
+	{
+		Task task;
+		synchronized (this)
+		{
+			task = (Task) _tasks.get(controllerId);
+			if (task == null)
+			{
+				if (path.isEmpty() || _taken.containsKey(controllerId))
+					return null;
+				throw new Exception("Unknown dependency " + controllerId + " of controller " + path.elementAt(path.size() - 1));
+			}
+			if (path.contains(controllerId))
+				throw new Exception("Dependency cycle at controller " + controllerId);
+		}
+
+		path.addElement(controllerId);
+		Task failedDependency = null;
+		boolean pending = false;
+		for (int i = 0; i < task.dependsOn.length; ++i)
+		{
+			Task dependency = await(task.dependsOn[i], path);
+			if (dependency == null)
+				continue;
+			if (dependency.state == Failed)
+				failedDependency = dependency;
+			else if (dependency.state != Built)
+				pending = true;
+		}
+		path.removeElementAt(path.size() - 1);
+
+		synchronized (this)
+		{
+			if (task.state == Registered && failedDependency != null)
+			{
+				fail(task, "Dependency " + failedDependency.controllerId + " of controller " + controllerId + " failed");
+				return task;
+			}
+			if (task.state == Registered && !pending)
+			{
+				_ready.removeElement(task);
+				task.state = Building;
+			}
+			else if (Application.isEventDispatchThread())
+			{
+				// Waiting could deadlock with a factory that needs the event thread
+				if (task.state == Registered)
+					task.urgent = true;
+				// A worker builds it once the dependencies are done
+				if (_numWorkers == 0)
+					startWorkers(1);
+				return task;
+			}
+			else
+			{
+				while (task.state == Building)
+					wait();
+				return task;
+			}
+		}
+		build(task);
+		return task;
+	}
+
+	/**
+	 * The build method builds a Controller that was claimed by setting
+	 * its state to Building and releases the Controllers that depend on it.
+	 * The Navigator is called on the event thread to attach the Controller
+	 * or report the failure.
+	 * 
+	 * @param task The Task
+	 */
+	private void build(Task task)
+	{
+		Controller controller = null;
+		String error = null;
+		try
+		{
+			controller = task.factory.createController();
+			if (controller == null || controller.getControllerId() != task.controllerId)
+				error = "Factory did not create the controller " + task.controllerId;
+		}
+		catch (Throwable t)
+		{
+			error = "Controller " + task.controllerId + " failed: " + t;
+		}
+
+		synchronized (this)
+		{
+			task.controller = controller;
+			task.error = error;
+			task.state = error == null ? Built : Failed;
+			IntEnumeration ids = _tasks.keys();
+			while (ids.hasMoreElements())
+			{
+				Task dependent = (Task) _tasks.get(ids.nextElement());
+				if (dependent.state == Registered && dependent.dependsOn(task.controllerId))
+					schedule(dependent);
+			}
+			notifyAll();
+		}
+		if (StartupTrace.getInstance().isEnabled())
+			StartupTrace.getInstance().mark("parallel controller " + task.controllerId);
+		attachLater(task.controllerId);
+	}
+
+	/**
+	 * The fail method marks a Controller that cannot be built as failed.
+	 * The failure is rethrown by take.
+	 * 
+	 * @param task The Task
+	 * @param error The reason
+	 */
+	private void fail(Task task, String error)
+	{
+		task.state = Failed;
+		task.error = error;
+		notifyAll();
+		attachLater(task.controllerId);
+	}
+
+	private void attachLater(final int controllerId)
+	{
+		_navigator.invokeLater(new Runnable()
+		{
+			public void run()
+			{
+				_navigator.onParallelControllerBuilt(controllerId);
+			}
+		});
+	}
+
+	/**
+	 * The schedule method queues a registered Controller for the workers
+	 * once all its dependencies were built. If one of them failed, the
+	 * Controller fails as well.
+	 * 
+	 * @param task The Task
+	 */
+	private void schedule(Task task)
+	{
+		if (task.state != Registered || _ready.contains(task))
+			return;
+		for (int i = 0; i < task.dependsOn.length; ++i)
+		{
+			Task dependency = (Task) _tasks.get(task.dependsOn[i]);
+			if (dependency == null)
+			{
+				if (_taken.containsKey(task.dependsOn[i]))
+					continue;
+				fail(task, "Unknown dependency " + task.dependsOn[i] + " of controller " + task.controllerId);
+				return;
+			}
+			if (dependency.state == Failed)
+			{
+				fail(task, "Dependency " + dependency.controllerId + " of controller " + task.controllerId + " failed");
+				return;
+			}
+			if (dependency.state != Built)
+				return;
+		}
+		// A Controller the event thread is waiting for goes first
+		if (task.urgent)
+			_ready.insertElementAt(task, 0);
+		else
+			_ready.addElement(task);
+		notifyAll();
+	}
+
+	/**
+	 * The takeReadyTask method is used by the workers to claim the next
+	 * Controller. It waits while Controllers are still building that
+	 * others may depend on.
+	 * 
+	 * @return The Task, null once no Controller can become ready anymore
+	 */
+	private synchronized Task takeReadyTask()
+	{
+		while (_ready.isEmpty())
+		{
+			if (!isBuilding())
+			{
+				--_numWorkers;
+				return null;
+			}
+			try
+			{
+				wait();
+			}
+			catch (InterruptedException e)
+			{
+				--_numWorkers;
+				return null;
+			}
+		}
+		Task task = (Task) _ready.elementAt(0);
+		_ready.removeElementAt(0);
+		task.state = Building;
+		return task;
+	}
+
+	private boolean isBuilding()
+	{
+		IntEnumeration ids = _tasks.keys();
+		while (ids.hasMoreElements())
+		{
+			if (((Task) _tasks.get(ids.nextElement())).state == Building)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * The Task class holds the registration and state of a Controller
+	 */
+	private static final class Task
+	{
+		final int controllerId;
+		final ControllerFactory factory;
+		final int[] dependsOn;
+		int state;
+		boolean urgent;
+		Controller controller;
+		String error;
+
+		Task(int controllerId, ControllerFactory factory, int[] dependsOn)
+		{
+			this.controllerId = controllerId;
+			this.factory = factory;
+			this.dependsOn = dependsOn;
+			this.state = Registered;
+		}
+
+		boolean dependsOn(int controllerId)
+		{
+			for (int i = 0; i < dependsOn.length; ++i)
+			{
+				if (dependsOn[i] == controllerId)
+					return true;
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,83 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import net.rim.device.api.system.PersistentObject;
+import net.rim.device.api.system.PersistentStore;
+
+/**
+ * The PersistentSnapshotStore class keeps the navigation snapshot 
+ * in the device's PersistentStore. The record is stored as a plain 
+ * byte array, so no Persistable classes are required.
+ * 
+ * @version 1.0
+ */
+public final class PersistentSnapshotStore implements SnapshotStore
+{
+	private PersistentObject _persistentObject;
+
+	/**
+	 * A constructor that takes the key of the PersistentObject
+	 * 
+	 * @param key A unique key for the application's snapshot
+	 */
+	public PersistentSnapshotStore(long key)
+	{
+		_persistentObject = PersistentStore.getPersistentObject(key);
+	}
+
+	/**
+	 * The load method returns the last saved snapshot record.
+	 * 
+	 * @return The snapshot record, null if no snapshot was saved
+	 */
+	public byte[] load()
+	{
+		synchronized (_persistentObject)
+		{
+			Object contents = _persistentObject.getContents();
+			if (contents instanceof byte[])
+				return (byte[]) contents;
+			return null;
+		}
+	}
+
+	/**
+	 * The save method replaces the saved snapshot record.
+	 * 
+	 * @param data The snapshot record
+	 */
+	public void save(byte[] data)
+	{
+		synchronized (_persistentObject)
+		{
+			_persistentObject.setContents(data);
+			_persistentObject.commit();
+		}
+	}
+
+	/**
+	 * The clear method removes the saved snapshot record.
+	 * 
+	 */
+	public void clear()
+	{
+		save(null);
+	}
+}
@@ -0,0 +1,84 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+/**
+ * The RouteMatch class is the result of matching a path against the
+ * RouteTable: the Controller id of the route and the values of its
+ * parameters in the order they appear in the pattern.
+ * 
+ * @version 1.0
+ */
+public final class RouteMatch
+{
+	private int _controllerId;
+	private String[] _names;
+	private Object[] _parameters;
+
+	/**
+	 * A constructor that takes the route's Controller id and parameters
+	 * 
+	 * @param controllerId The id of the Controller
+	 * @param names The names of the parameters
+	 * @param parameters The values of the parameters
+	 */
+	RouteMatch(int controllerId, String[] names, Object[] parameters)
+	{
+		_controllerId = controllerId;
+		_names = names;
+		_parameters = parameters;
+	}
+
+	/**
+	 * The getControllerId accessor method returns the id of the route's Controller.
+	 * 
+	 * @return The id of the Controller
+	 */
+	public int getControllerId()
+	{
+		return _controllerId;
+	}
+
+	/**
+	 * The getParameters accessor method returns the parameter values in
+	 * pattern order, so they can be passed to navigate as they are.
+	 * 
+	 * @return The parameter values, Strings or Integers, null if the route has no parameters
+	 */
+	public Object[] getParameters()
+	{
+		return _parameters;
+	}
+
+	/**
+	 * The getParameter accessor method returns a parameter value by name.
+	 * 
+	 * @param name The name of the parameter in the pattern
+	 * @return The value, null if the route has no such parameter
+	 */
+	public Object getParameter(String name)
+	{
+		for (int i = 0; i < _names.length; ++i)
+		{
+			if (_names[i].equals(name))
+				return _parameters[i];
+		}
+		return null;
+	}
+}
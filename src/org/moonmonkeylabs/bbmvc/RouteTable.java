@@ -0,0 +1,266 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+/**
+ * The RouteTable class maps paths, e.g. from notifications or links, to
+ * Controller ids. Patterns like /msg/{id:int}/reply are compiled into a
+ * character trie, so a path is matched in a single pass over its
+ * characters. A parameter in braces matches everything up to the next
+ * slash, {name} is passed as a String and {name:int} as an Integer
+ * that is parsed while matching. Literal characters take precedence
+ * over int parameters and int parameters over String parameters.
+ * 
+ * @version 1.0
+ */
+public final class RouteTable
+{
+	private static final int StringParameter = 1;
+	private static final int IntParameter = 2;
+
+	private Node _root;
+	private int _maxParameters;
+
+	/**
+	 * Default constructor for RouteTable
+	 * 
+	 */
+	public RouteTable()
+	{
+		_root = new Node();
+	}
+
+	/**
+	 * The add method adds a route.
+	 * 
+	 * @param pattern The pattern, e.g. /msg/{id:int}/reply
+	 * @param controllerId The id of the Controller the route leads to
+	 * @throws Exception Throws an exception if the pattern is malformed or already added or the id is not positive
+	 */
+	public synchronized void add(String pattern, int controllerId) throws Exception
+	{
+		if (pattern == null)
+			throw new Exception("Argument is null");
+		if (controllerId <= 0)
+			throw new Exception("Invalid controller id " + controllerId);
+
+		Node node = _root;
+		int numParameters = 0;
+		String[] names = new String[pattern.length()];
+		int length = pattern.length();
+		int i = 0;
+		while (i < length)
+		{
+			char c = pattern.charAt(i);
+			if (c == '{')
+			{
+				int end = pattern.indexOf('}', i);
+				if (end < 0 || (end + 1 < length && pattern.charAt(end + 1) != '/'))
+					throw new Exception("Malformed route " + pattern);
+				String name = pattern.substring(i + 1, end);
+				int type = StringParameter;
+				int colon = name.indexOf(':');
+				if (colon >= 0)
+				{
+					if (!name.substring(colon + 1).equals("int"))
+						throw new Exception("Unknown parameter type in route " + pattern);
+					type = IntParameter;
+					name = name.substring(0, colon);
+				}
+				if (name.length() == 0)
+					throw new Exception("Malformed route " + pattern);
+				node = node.getParameterChild(type);
+				names[numParameters++] = name;
+				i = end + 1;
+			}
+			else
+			{
+				node = node.getChild(c);
+				++i;
+			}
+		}
+
+		if (node.controllerId != 0)
+			throw new Exception("Route already exists " + pattern);
+		node.controllerId = controllerId;
+		node.names = new String[numParameters];
+		System.arraycopy(names, 0, node.names, 0, numParameters);
+		if (numParameters > _maxParameters)
+			_maxParameters = numParameters;
+	}
+
+	/**
+	 * The match method looks up the route of a path.
+	 * 
+	 * @param path The path, e.g. /msg/42/reply
+	 * @return The RouteMatch, null if no route matches
+	 */
+	public synchronized RouteMatch match(String path)
+	{
+		if (path == null)
+			return null;
+		Object[] values = new Object[_maxParameters];
+		Node node = match(_root, path, 0, values, 0);
+		if (node == null)
+			return null;
+
+		// A route without parameters does not initialize the Controller
+		Object[] parameters = null;
+		if (node.names.length > 0)
+		{
+			parameters = new Object[node.names.length];
+			System.arraycopy(values, 0, parameters, 0, parameters.length);
+		}
+		return new RouteMatch(node.controllerId, node.names, parameters);
+	}
+
+	/**
+	 * The match method walks the trie along the path. Literal characters
+	 * are tried first, a parameter is only tried if the rest of the path
+	 * does not match after them.
+	 * 
+	 * @param node The current Node
+	 * @param path The path
+	 * @param position The position in the path
+	 * @param values The parameter values
+	 * @param numValues The number of parameters matched so far
+	 * @return The Node of the route, null if no route matches
+	 */
+	private static Node match(Node node, String path, int position, Object[] values, int numValues)
+	{
+		int length = path.length();
+		// Runs of literal characters are walked without recursion
+		while (position < length && node.intChild == null && node.stringChild == null)
+		{
+			node = node.findChild(path.charAt(position));
+			if (node == null)
+				return null;
+			++position;
+		}
+		if (position == length)
+			return node.controllerId != 0 ? node : null;
+
+		Node child = node.findChild(path.charAt(position));
+		if (child != null)
+		{
+			Node found = match(child, path, position + 1, values, numValues);
+			if (found != null)
+				return found;
+		}
+
+		int end = position;
+		while (end < length && path.charAt(end) != '/')
+			++end;
+		if (end == position)
+			return null;
+
+		if (node.intChild != null)
+		{
+			boolean negative = path.charAt(position) == '-';
+			int digit = negative ? position + 1 : position;
+			// Up to nine digits always fit into an int
+			boolean valid = digit < end && end - digit <= 9;
+			int value = 0;
+			for (; valid && digit < end; ++digit)
+			{
+				char c = path.charAt(digit);
+				if (c < '0' || c > '9')
+					valid = false;
+				else
+					value = value * 10 + (c - '0');
+			}
+			if (valid)
+			{
+				values[numValues] = new Integer(negative ? -value : value);
+				Node found = match(node.intChild, path, end, values, numValues + 1);
+				if (found != null)
+					return found;
+			}
+		}
+		if (node.stringChild != null)
+		{
+			values[numValues] = path.substring(position, end);
+			return match(node.stringChild, path, end, values, numValues + 1);
+		}
+		return null;
+	}
+
+	/**
+	 * The Node class is a node of the trie. Literal children are kept in
+	 * small parallel arrays, most nodes only have one child.
+	 */
+	private static final class Node
+	{
+		char[] chars;
+		Node[] children;
+		int numChildren;
+		Node intChild;
+		Node stringChild;
+		int controllerId;
+		String[] names;
+
+		Node findChild(char c)
+		{
+			for (int i = 0; i < numChildren; ++i)
+			{
+				if (chars[i] == c)
+					return children[i];
+			}
+			return null;
+		}
+
+		Node getChild(char c)
+		{
+			Node child = findChild(c);
+			if (child != null)
+				return child;
+			if (chars == null || numChildren == chars.length)
+			{
+				int capacity = numChildren == 0 ? 1 : numChildren * 2;
+				char[] newChars = new char[capacity];
+				Node[] newChildren = new Node[capacity];
+				if (numChildren > 0)
+				{
+					System.arraycopy(chars, 0, newChars, 0, numChildren);
+					System.arraycopy(children, 0, newChildren, 0, numChildren);
+				}
+				chars = newChars;
+				children = newChildren;
+			}
+			child = new Node();
+			chars[numChildren] = c;
+			children[numChildren] = child;
+			++numChildren;
+			return child;
+		}
+
+		Node getParameterChild(int type)
+		{
+			if (type == IntParameter)
+			{
+				if (intChild == null)
+					intChild = new Node();
+				return intChild;
+			}
+			if (stringChild == null)
+				stringChild = new Node();
+			return stringChild;
+		}
+	}
+}
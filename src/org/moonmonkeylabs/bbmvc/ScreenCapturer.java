@@ -0,0 +1,39 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import net.rim.device.api.system.Bitmap;
+import net.rim.device.api.ui.Screen;
+
+/**
+ * The ScreenCapturer interface is used by the ScreenSnapshotCache to
+ * capture a Bitmap of the screen on top of the display stack.
+ * 
+ * @version 1.0
+ */
+public interface ScreenCapturer
+{
+	/**
+	 * The capture method captures a Bitmap of a displayed screen.
+	 * 
+	 * @param screen The Screen on top of the display stack
+	 * @return The captured Bitmap, null if the screen cannot be captured
+	 */
+	public abstract Bitmap capture(Screen screen);
+}
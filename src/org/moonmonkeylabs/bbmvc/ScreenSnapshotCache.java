@@ -0,0 +1,221 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import net.rim.device.api.system.Bitmap;
+import net.rim.device.api.util.IntHashtable;
+import net.rim.device.api.util.IntVector;
+
+/**
+ * The ScreenSnapshotCache class keeps Bitmaps of the screens in the
+ * navigation history, so that back navigation can show a screen right
+ * away while it is pushed again. The Navigator only captures a screen
+ * when it is about to leave the display stack. A snapshot that was
+ * captured before the Controller's View changed is stale and dropped.
+ * The cache is bounded by a memory budget and evicts the least recently
+ * used snapshots first.
+ * 
+ * @version 1.0
+ */
+public final class ScreenSnapshotCache
+{
+	private ScreenCapturer _capturer;
+	private IntHashtable _snapshots;
+	private IntHashtable _versions;
+	private IntVector _usage;
+	private int _budget;
+	private int _size;
+
+	/**
+	 * A constructor that takes the memory budget and uses a 
+	 * DisplayScreenCapturer
+	 * 
+	 * @param budget The maximum size of all snapshots in bytes
+	 */
+	public ScreenSnapshotCache(int budget)
+	{
+		this(budget, new DisplayScreenCapturer());
+	}
+
+	/**
+	 * A constructor that takes the memory budget and the ScreenCapturer
+	 * 
+	 * @param budget The maximum size of all snapshots in bytes
+	 * @param capturer The ScreenCapturer, e.g. an in-memory stand-in for testing
+	 */
+	public ScreenSnapshotCache(int budget, ScreenCapturer capturer)
+	{
+		_budget = budget;
+		_capturer = capturer;
+		_snapshots = new IntHashtable();
+		_versions = new IntHashtable();
+		_usage = new IntVector();
+	}
+
+	/**
+	 * The capture method captures the screen of a Controller and keeps 
+	 * the snapshot together with the version of the View's content.
+	 * 
+	 * @param controller The Controller whose screen is on top of the display stack
+	 */
+	public void capture(Controller controller)
+	{
+		int controllerId = controller.getControllerId();
+		int version = controller.getViewVersion();
+		Bitmap snapshot = _capturer.capture(controller.getView().getViewScreen());
+		synchronized (this)
+		{
+			if (snapshot != null)
+			{
+				put(controllerId, snapshot);
+				if (_snapshots.containsKey(controllerId))
+					_versions.put(controllerId, new Integer(version));
+			}
+			else
+				remove(controllerId);
+		}
+	}
+
+	/**
+	 * The isCurrent method checks if there is a snapshot of a Controller's
+	 * screen that shows the current content of its View.
+	 * 
+	 * @param controller The Controller
+	 * @return True if there is a snapshot and it is not stale
+	 */
+	public synchronized boolean isCurrent(Controller controller)
+	{
+		Integer version = (Integer) _versions.get(controller.getControllerId());
+		return _snapshots.containsKey(controller.getControllerId())
+			&& (version == null || version.intValue() == controller.getViewVersion());
+	}
+
+	/**
+	 * The put method keeps a snapshot and evicts the least recently used
+	 * snapshots until the cache fits the budget again. A snapshot that
+	 * is larger than the whole budget is not kept. A snapshot that is put
+	 * directly instead of captured is never considered stale.
+	 * 
+	 * @param controllerId The Controller's id
+	 * @param snapshot The snapshot Bitmap
+	 */
+	public synchronized void put(int controllerId, Bitmap snapshot)
+	{
+		remove(controllerId);
+		int snapshotSize = sizeOf(snapshot);
+		if (snapshotSize > _budget)
+			return;
+
+		while (_size + snapshotSize > _budget && _usage.size() > 0)
+			remove(_usage.elementAt(0));
+		_snapshots.put(controllerId, snapshot);
+		_usage.addElement(controllerId);
+		_size += snapshotSize;
+	}
+
+	/**
+	 * The get method returns the snapshot of a Controller and marks it
+	 * as recently used.
+	 * 
+	 * @param controllerId The Controller's id
+	 * @return The snapshot Bitmap, null if there is none
+	 */
+	public synchronized Bitmap get(int controllerId)
+	{
+		Bitmap snapshot = (Bitmap) _snapshots.get(controllerId);
+		if (snapshot != null)
+		{
+			_usage.removeElementAt(_usage.indexOf(controllerId));
+			_usage.addElement(controllerId);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * The get method returns the snapshot of a Controller's screen unless
+	 * the View changed since it was captured, a stale snapshot is dropped.
+	 * 
+	 * @param controller The Controller
+	 * @return The snapshot Bitmap, null if there is none or it is stale
+	 */
+	public synchronized Bitmap get(Controller controller)
+	{
+		if (!isCurrent(controller))
+		{
+			remove(controller.getControllerId());
+			return null;
+		}
+		return get(controller.getControllerId());
+	}
+
+	/**
+	 * The remove method drops the snapshot of a Controller, e.g. when 
+	 * its screen changed while it was covered.
+	 * 
+	 * @param controllerId The Controller's id
+	 */
+	public synchronized void remove(int controllerId)
+	{
+		Bitmap snapshot = (Bitmap) _snapshots.remove(controllerId);
+		_versions.remove(controllerId);
+		if (snapshot != null)
+		{
+			_usage.removeElementAt(_usage.indexOf(controllerId));
+			_size -= sizeOf(snapshot);
+		}
+	}
+
+	/**
+	 * The clear method drops all snapshots.
+	 * 
+	 */
+	public synchronized void clear()
+	{
+		_snapshots.clear();
+		_versions.clear();
+		_usage.removeAllElements();
+		_size = 0;
+	}
+
+	/**
+	 * The getSize accessor method returns the size of all snapshots.
+	 * 
+	 * @return The size in bytes
+	 */
+	public synchronized int getSize()
+	{
+		return _size;
+	}
+
+	/**
+	 * The getBudget accessor method returns the memory budget.
+	 * 
+	 * @return The budget in bytes
+	 */
+	public int getBudget()
+	{
+		return _budget;
+	}
+
+	private static int sizeOf(Bitmap snapshot)
+	{
+		// Bitmaps are stored with up to 32 bits per pixel
+		return snapshot.getWidth() * snapshot.getHeight() * 4;
+	}
+}
@@ -0,0 +1,137 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import java.util.Vector;
+
+/**
+ * The SerialWorker class runs tasks on a background thread, one after
+ * another in the order they were added. No two tasks of the same 
+ * SerialWorker ever run at the same time. The thread is started with
+ * the first task and ends after it has been idle for a while. A task
+ * that fails does not stop the tasks after it, subclasses override
+ * onTaskFailed to handle the failure.
+ * 
+ * @version 1.0
+ */
+public class SerialWorker implements Runnable
+{
+	private static final long IdleTimeout = 5000;
+
+	private Vector _queue;
+	private Thread _thread;
+
+	/**
+	 * Default constructor for SerialWorker
+	 * 
+	 */
+	public SerialWorker()
+	{
+		_queue = new Vector();
+	}
+
+	/**
+	 * The execute method adds a task to the end of the queue.
+	 * 
+	 * @param task The task to be run
+	 */
+	public synchronized void execute(Runnable task)
+	{
+		_queue.addElement(task);
+		if (_thread == null)
+		{
+			_thread = new Thread(this);
+			_thread.start();
+		}
+		else
+			notify();
+	}
+
+	/**
+	 * The getQueueSize accessor method returns the number of tasks
+	 * that have not been started yet.
+	 * 
+	 * @return The number of queued tasks
+	 */
+	public synchronized int getQueueSize()
+	{
+		return _queue.size();
+	}
+
+	/**
+	 * The run method is the worker thread's loop and must not be 
+	 * called directly.
+	 * 
+	 */
+	public final void run()
+	{
+		while (true)
+		{
+			Runnable task;
+			synchronized (this)
+			{
+				if (_queue.isEmpty())
+				{
+					try
+					{
+						wait(IdleTimeout);
+					}
+					catch (InterruptedException e)
+					{
+					}
+				}
+				// The thread ends if no task was added in the meantime
+				if (_queue.isEmpty())
+				{
+					_thread = null;
+					return;
+				}
+				task = (Runnable) _queue.elementAt(0);
+				_queue.removeElementAt(0);
+			}
+
+			try
+			{
+				task.run();
+			}
+			catch (Throwable t)
+			{
+				// A failing task must not stop the tasks queued after it
+				try
+				{
+					onTaskFailed(task, t);
+				}
+				catch (Throwable ignored)
+				{
+				}
+			}
+		}
+	}
+
+	/**
+	 * The onTaskFailed method is called on the worker thread when a task
+	 * throws. It does nothing by default.
+	 * 
+	 * @param task The task that failed
+	 * @param t The Throwable the task threw
+	 */
+	protected void onTaskFailed(Runnable task, Throwable t)
+	{
+	}
+}
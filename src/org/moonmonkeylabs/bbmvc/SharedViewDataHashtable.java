@@ -0,0 +1,285 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import java.util.Enumeration;
+import java.util.Vector;
+
+import net.rim.device.api.util.IntEnumeration;
+import net.rim.device.api.util.IntHashtable;
+import net.rim.device.api.util.IntVector;
+
+/**
+ * The SharedViewDataHashtable class is a copy-on-write ViewDataHashtable.
+ * Forking it is O(1): the fork and the original share all entries and 
+ * each of them only keeps the entries it modified afterwards. This way
+ * a large table can be handed from one Controller to another without
+ * doubling the memory. A fork has the same derived entries, they are
+ * recomputed when they are first read.
+ * 
+ * The shared entries are kept in frozen layers that are never modified
+ * again. Removed keys are marked in the local entries so they hide the
+ * shared ones. Once the chain of layers gets too deep, a fork flattens
+ * it into a single layer.
+ * 
+ * @version 1.0
+ */
+public final class SharedViewDataHashtable extends ViewDataHashtable
+{
+	private static final Object Removed = new Object();
+	private static final int MaxDepth = 8;
+
+	private IntHashtable _entries;
+	private Layer _shared;
+	private int _size;
+
+	/**
+	 * Default constructor for SharedViewDataHashtable
+	 * 
+	 */
+	public SharedViewDataHashtable()
+	{
+		this(null);
+	}
+
+	/**
+	 * Constructor for SharedViewDataHashtable that takes a Model object
+	 * 
+	 * @param model An instance of a Model
+	 */
+	public SharedViewDataHashtable(Object model)
+	{
+		// The inherited hashtable is never used
+		super(model, 1);
+		_entries = new IntHashtable();
+	}
+
+	/**
+	 * The fork method creates a new SharedViewDataHashtable that 
+	 * has the same entries and Model. Modifications of either table 
+	 * are not visible in the other one.
+	 * 
+	 * @return The forked SharedViewDataHashtable
+	 */
+	public synchronized SharedViewDataHashtable fork()
+	{
+		// Freeze the local entries so that both tables can share them
+		if (!_entries.isEmpty())
+		{
+			_shared = new Layer(_entries, _shared);
+			_entries = new IntHashtable();
+		}
+		if (_shared != null && _shared.depth > MaxDepth)
+			_shared = flatten();
+
+		SharedViewDataHashtable fork = new SharedViewDataHashtable(getModel());
+		fork._shared = _shared;
+		fork._size = _size;
+		fork.copyDerived(this);
+		return fork;
+	}
+
+	protected synchronized Object getEntry(int key)
+	{
+		Object value = _entries.get(key);
+		if (value == null)
+			value = getShared(key);
+		return value == Removed ? null : value;
+	}
+
+	protected synchronized Object putEntry(int key, Object value)
+	{
+		if (value == null)
+			throw new NullPointerException();
+		Object previous = getEntry(key);
+		_entries.put(key, value);
+		if (previous == null)
+			++_size;
+		return previous;
+	}
+
+	protected synchronized Object removeEntry(int key)
+	{
+		Object previous = getEntry(key);
+		if (previous == null)
+			return null;
+
+		// A shared entry can only be hidden, not removed
+		if (getShared(key) != null)
+			_entries.put(key, Removed);
+		else
+			_entries.remove(key);
+		--_size;
+		return previous;
+	}
+
+	protected synchronized void clearEntries()
+	{
+		_entries = new IntHashtable();
+		_shared = null;
+		_size = 0;
+	}
+
+	public synchronized int size()
+	{
+		return _size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size() == 0;
+	}
+
+	public synchronized boolean contains(Object value)
+	{
+		Enumeration values = elements();
+		while (values.hasMoreElements())
+		{
+			if (values.nextElement().equals(value))
+				return true;
+		}
+		return false;
+	}
+
+	public synchronized IntEnumeration keys()
+	{
+		final int[] keys = new int[_size];
+		collect(keys, null);
+		return new IntEnumeration()
+		{
+			private int _index;
+
+			public boolean hasMoreElements()
+			{
+				return _index < keys.length;
+			}
+
+			public int nextElement()
+			{
+				return keys[_index++];
+			}
+		};
+	}
+
+	public synchronized Enumeration elements()
+	{
+		Vector values = new Vector(_size);
+		collect(null, values);
+		return values.elements();
+	}
+
+	/**
+	 * The getShared method looks a key up in the shared layers, the
+	 * closest layer wins.
+	 * 
+	 * @param key The key
+	 * @return The value, Removed or null if the key is not in any layer
+	 */
+	private Object getShared(int key)
+	{
+		for (Layer layer = _shared; layer != null; layer = layer.parent)
+		{
+			Object value = layer.entries.get(key);
+			if (value != null)
+				return value;
+		}
+		return null;
+	}
+
+	/**
+	 * The collect method collects the visible keys and values of the
+	 * local entries and all shared layers.
+	 * 
+	 * @param keys An array for the keys, can be null
+	 * @param values A Vector for the values, can be null
+	 */
+	private void collect(int[] keys, Vector values)
+	{
+		IntHashtable seen = new IntHashtable(Math.max(1, _size));
+		int count = collect(_entries, seen, keys, values, 0);
+		for (Layer layer = _shared; layer != null; layer = layer.parent)
+			count = collect(layer.entries, seen, keys, values, count);
+	}
+
+	private static int collect(IntHashtable entries, IntHashtable seen, int[] keys, Vector values, int count)
+	{
+		IntEnumeration entryKeys = entries.keys();
+		while (entryKeys.hasMoreElements())
+		{
+			int key = entryKeys.nextElement();
+			// Only the closest entry for a key is visible
+			if (seen.containsKey(key))
+				continue;
+			Object value = entries.get(key);
+			seen.put(key, value);
+			if (value != Removed)
+			{
+				if (keys != null)
+					keys[count] = key;
+				if (values != null)
+					values.addElement(value);
+				++count;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * The flatten method merges all shared layers into a single layer
+	 * 
+	 * @return The new shared layer
+	 */
+	private Layer flatten()
+	{
+		IntHashtable seen = new IntHashtable(Math.max(1, _size));
+		IntHashtable entries = new IntHashtable(Math.max(1, _size));
+		for (Layer layer = _shared; layer != null; layer = layer.parent)
+		{
+			IntEnumeration layerKeys = layer.entries.keys();
+			while (layerKeys.hasMoreElements())
+			{
+				int key = layerKeys.nextElement();
+				if (seen.containsKey(key))
+					continue;
+				Object value = layer.entries.get(key);
+				seen.put(key, value);
+				if (value != Removed)
+					entries.put(key, value);
+			}
+		}
+		return new Layer(entries, null);
+	}
+
+	/**
+	 * The Layer class holds frozen entries that are shared between tables
+	 */
+	private static final class Layer
+	{
+		final IntHashtable entries;
+		final Layer parent;
+		final int depth;
+
+		Layer(IntHashtable entries, Layer parent)
+		{
+			this.entries = entries;
+			this.parent = parent;
+			this.depth = parent == null ? 1 : parent.depth + 1;
+		}
+	}
+}
@@ -0,0 +1,40 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+/**
+ * The SizeEstimator interface estimates the memory an object of an
+ * application type retains. Estimators are added to the
+ * MemoryAccountant for the types it has no estimate for.
+ * 
+ * @version 1.0
+ */
+public interface SizeEstimator
+{
+	/**
+	 * The estimateSize method returns the estimated size of an object.
+	 * Objects it references are added with accountant.sizeOf, so that
+	 * objects that are referenced more than once are only counted once.
+	 * 
+	 * @param object The object
+	 * @param accountant The MemoryAccountant that is measuring
+	 * @return The estimated size in bytes
+	 */
+	public abstract int estimateSize(Object object, MemoryAccountant accountant);
+}
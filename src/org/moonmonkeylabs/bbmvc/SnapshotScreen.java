@@ -0,0 +1,50 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import net.rim.device.api.system.Bitmap;
+import net.rim.device.api.ui.Graphics;
+import net.rim.device.api.ui.container.FullScreen;
+
+/**
+ * The SnapshotScreen class is pushed by the Navigator on back navigation
+ * to show the snapshot of the revealed screen while the real screen 
+ * does its layout.
+ * 
+ * @version 1.0
+ */
+final class SnapshotScreen extends FullScreen
+{
+	private Bitmap _snapshot;
+
+	/**
+	 * A constructor that takes the snapshot
+	 * 
+	 * @param snapshot The Bitmap that is shown
+	 */
+	SnapshotScreen(Bitmap snapshot)
+	{
+		_snapshot = snapshot;
+	}
+
+	protected void paint(Graphics graphics)
+	{
+		graphics.drawBitmap(0, 0, _snapshot.getWidth(), _snapshot.getHeight(), _snapshot, 0, 0);
+	}
+}
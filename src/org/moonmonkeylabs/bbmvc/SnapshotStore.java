@@ -0,0 +1,54 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import java.io.IOException;
+
+/**
+ * The SnapshotStore interface is used by the Navigator to save and 
+ * load the navigation snapshot that allows an application to resume
+ * where it was before it was closed.
+ * 
+ * @version 1.0
+ */
+public interface SnapshotStore
+{
+	/**
+	 * The load method returns the last saved snapshot record.
+	 * 
+	 * @return The snapshot record, null if no snapshot was saved
+	 * @throws IOException Thrown if the record cannot be read
+	 */
+	public abstract byte[] load() throws IOException;
+
+	/**
+	 * The save method replaces the saved snapshot record.
+	 * 
+	 * @param data The snapshot record
+	 * @throws IOException Thrown if the record cannot be written
+	 */
+	public abstract void save(byte[] data) throws IOException;
+
+	/**
+	 * The clear method removes the saved snapshot record.
+	 * 
+	 * @throws IOException Thrown if the record cannot be removed
+	 */
+	public abstract void clear() throws IOException;
+}
@@ -0,0 +1,206 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+/**
+ * The SpanRecorder class records the spans of the framework's work, 
+ * e.g. Controller initialization, model notifications, view updates and
+ * screen pushes, into a fixed-size ring buffer. The spans can be 
+ * exported in the Chrome trace format and loaded into a timeline 
+ * viewer, which shows the order in which things happened.
+ * 
+ * The recorder is disabled by default. While it is disabled, recording
+ * a span costs a single field check.
+ * 
+ * @version 1.0
+ */
+public final class SpanRecorder
+{
+	private static final SpanRecorder _instance = new SpanRecorder();
+
+	private boolean _enabled;
+	private String[] _names;
+	private String[] _categories;
+	private int[] _ids;
+	private int[] _threads;
+	private long[] _starts;
+	private long[] _durations;
+	private int _nextSpan;
+	private int _numSpans;
+
+	/**
+	 * Default constructor for SpanRecorder
+	 * 
+	 */
+	private SpanRecorder()
+	{
+		setCapacity(1024);
+	}
+
+	/**
+	 * The getInstance static method returns the SpanRecorder instance.
+	 * 
+	 * @return The SpanRecorder
+	 */
+	public static SpanRecorder getInstance()
+	{
+		return _instance;
+	}
+
+	/**
+	 * The setEnabled mutator enables or disables the recorder.
+	 * 
+	 * @param enabled True to record spans
+	 */
+	public void setEnabled(boolean enabled)
+	{
+		_enabled = enabled;
+	}
+
+	/**
+	 * The isEnabled accessor method returns if the recorder is enabled.
+	 * 
+	 * @return True if spans are recorded
+	 */
+	public boolean isEnabled()
+	{
+		return _enabled;
+	}
+
+	/**
+	 * The setCapacity mutator sets the number of spans that are kept.
+	 * The current spans are cleared.
+	 * 
+	 * @param capacity The number of spans - has to be greater than zero
+	 */
+	public synchronized void setCapacity(int capacity)
+	{
+		if (capacity <= 0)
+			return;
+		_names = new String[capacity];
+		_categories = new String[capacity];
+		_ids = new int[capacity];
+		_threads = new int[capacity];
+		_starts = new long[capacity];
+		_durations = new long[capacity];
+		_nextSpan = 0;
+		_numSpans = 0;
+	}
+
+	/**
+	 * The clear method removes all recorded spans.
+	 * 
+	 */
+	public synchronized void clear()
+	{
+		for (int i = 0; i < _names.length; ++i)
+		{
+			_names[i] = null;
+			_categories[i] = null;
+		}
+		_nextSpan = 0;
+		_numSpans = 0;
+	}
+
+	/**
+	 * The begin method is called by the framework when a span starts.
+	 * 
+	 * @return The start time, -1 if the recorder is disabled
+	 */
+	long begin()
+	{
+		return _enabled ? System.currentTimeMillis() : -1;
+	}
+
+	/**
+	 * The end method is called by the framework when a span ends.
+	 * 
+	 * @param name The name of the span
+	 * @param category The category of the span
+	 * @param id The Controller id or event key the span belongs to
+	 * @param start The start time returned by begin
+	 */
+	void end(String name, String category, int id, long start)
+	{
+		if (start < 0)
+			return;
+
+		long duration = System.currentTimeMillis() - start;
+		int thread = Thread.currentThread().hashCode();
+		synchronized (this)
+		{
+			_names[_nextSpan] = name;
+			_categories[_nextSpan] = category;
+			_ids[_nextSpan] = id;
+			_threads[_nextSpan] = thread;
+			_starts[_nextSpan] = start;
+			_durations[_nextSpan] = duration;
+			_nextSpan = (_nextSpan + 1) % _names.length;
+			if (_numSpans < _names.length)
+				++_numSpans;
+		}
+	}
+
+	/**
+	 * The exportChromeTrace method exports the recorded spans, oldest first,
+	 * as complete events in the Chrome trace JSON format.
+	 * 
+	 * @return The trace as JSON
+	 */
+	public synchronized String exportChromeTrace()
+	{
+		StringBuffer json = new StringBuffer(_numSpans * 128 + 64);
+		json.append("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+		int first = _nextSpan - _numSpans + _names.length;
+		for (int i = 0; i < _numSpans; ++i)
+		{
+			int span = (first + i) % _names.length;
+			if (i > 0)
+				json.append(',');
+			json.append("{\"name\":");
+			appendString(json, _names[span]);
+			json.append(",\"cat\":");
+			appendString(json, _categories[span]);
+			// Chrome traces use microseconds
+			json.append(",\"ph\":\"X\",\"ts\":").append(_starts[span] * 1000);
+			json.append(",\"dur\":").append(_durations[span] * 1000);
+			json.append(",\"pid\":1,\"tid\":").append(_threads[span]);
+			json.append(",\"args\":{\"id\":").append(_ids[span]).append("}}");
+		}
+		json.append("]}");
+		return json.toString();
+	}
+
+	private static void appendString(StringBuffer json, String value)
+	{
+		json.append('"');
+		int length = value.length();
+		for (int i = 0; i < length; ++i)
+		{
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\')
+				json.append('\\').append(c);
+			else if (c < ' ')
+				json.append(' ');
+			else
+				json.append(c);
+		}
+		json.append('"');
+	}
+}
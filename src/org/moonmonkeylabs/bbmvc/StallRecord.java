@@ -0,0 +1,123 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+/**
+ * The StallRecord class describes a single stall that was recorded
+ * by the StallWatchdog.
+ * 
+ * @version 1.0
+ */
+public final class StallRecord
+{
+	private int _kind;
+	private String _subject;
+	private int _controllerId;
+	private long _startTime;
+	private long _duration;
+	private boolean _ongoing;
+
+	/**
+	 * A constructor that takes all values of the record
+	 * 
+	 * @param kind The kind of the stalled operation
+	 * @param subject The responsible listener, View or navigation operation
+	 * @param controllerId The id of the responsible Controller, 0 if unknown
+	 * @param startTime The time the operation started
+	 * @param duration How long the operation took or has been running
+	 * @param ongoing True if the operation had not finished yet
+	 */
+	StallRecord(int kind, String subject, int controllerId, long startTime, long duration, boolean ongoing)
+	{
+		_kind = kind;
+		_subject = subject;
+		_controllerId = controllerId;
+		_startTime = startTime;
+		_duration = duration;
+		_ongoing = ongoing;
+	}
+
+	/**
+	 * The getKind accessor method returns the kind of the operation
+	 * 
+	 * @return StallWatchdog.EventTask, ModelNotification or Navigation
+	 */
+	public int getKind()
+	{
+		return _kind;
+	}
+
+	/**
+	 * The getSubject accessor method returns what was responsible
+	 * for the stall, e.g. the class name of a ModelListener
+	 * 
+	 * @return The description of the responsible object or operation
+	 */
+	public String getSubject()
+	{
+		return _subject;
+	}
+
+	/**
+	 * The getControllerId accessor method returns the id of the
+	 * responsible Controller
+	 * 
+	 * @return The Controller's id, 0 if unknown
+	 */
+	public int getControllerId()
+	{
+		return _controllerId;
+	}
+
+	/**
+	 * The getStartTime accessor method returns when the operation started
+	 * 
+	 * @return The start time in milliseconds
+	 */
+	public long getStartTime()
+	{
+		return _startTime;
+	}
+
+	/**
+	 * The getDuration accessor method returns how long the operation took
+	 * 
+	 * @return The duration in milliseconds
+	 */
+	public long getDuration()
+	{
+		return _duration;
+	}
+
+	/**
+	 * The isOngoing accessor method returns if the operation was still
+	 * running when it was recorded by the monitor
+	 * 
+	 * @return True if the operation had not finished yet
+	 */
+	public boolean isOngoing()
+	{
+		return _ongoing;
+	}
+
+	public String toString()
+	{
+		return _subject + " (" + _controllerId + "): " + _duration + "ms" + (_ongoing ? ", still running" : "");
+	}
+}
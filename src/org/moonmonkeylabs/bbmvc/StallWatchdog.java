@@ -0,0 +1,275 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+import net.rim.device.api.system.Application;
+
+/**
+ * The StallWatchdog class tracks how long the event thread tasks of the
+ * framework run, how long workers wait in Model.notifyModelListeners 
+ * and how long navigation takes. Whenever an operation takes longer 
+ * than the threshold, a StallRecord with the responsible listener, 
+ * Controller id or navigation operation is kept in a ring buffer.
+ * 
+ * A monitor can be started to record event thread tasks that are 
+ * still running, so stalls show up even if a task never returns.
+ * The watchdog is disabled by default.
+ * 
+ * @version 1.0
+ */
+public final class StallWatchdog
+{
+	public static final int EventTask = 1;
+	public static final int ModelNotification = 2;
+	public static final int Navigation = 3;
+
+	private static final StallWatchdog _instance = new StallWatchdog();
+
+	private boolean _enabled;
+	private long _threshold;
+	private StallRecord[] _records;
+	private int _nextRecord;
+	private int _numRecords;
+	private Timer _monitor;
+
+	// The outermost framework task that is running on the event thread
+	private int _activeDepth;
+	private int _activeKind;
+	private Object _activeSubject;
+	private int _activeControllerId;
+	private long _activeStart;
+	private boolean _activeRecorded;
+
+	/**
+	 * Default constructor for StallWatchdog
+	 * 
+	 */
+	private StallWatchdog()
+	{
+		_threshold = 500;
+		_records = new StallRecord[32];
+	}
+
+	/**
+	 * The getInstance static method returns the StallWatchdog instance.
+	 * 
+	 * @return The StallWatchdog
+	 */
+	public static StallWatchdog getInstance()
+	{
+		return _instance;
+	}
+
+	/**
+	 * The setEnabled mutator enables or disables the watchdog.
+	 * 
+	 * @param enabled True to track operations
+	 */
+	public void setEnabled(boolean enabled)
+	{
+		_enabled = enabled;
+	}
+
+	/**
+	 * The isEnabled accessor method returns if the watchdog is enabled.
+	 * 
+	 * @return True if operations are tracked
+	 */
+	public boolean isEnabled()
+	{
+		return _enabled;
+	}
+
+	/**
+	 * The setThreshold mutator sets the duration after which an 
+	 * operation is recorded.
+	 * 
+	 * @param threshold The threshold in milliseconds
+	 */
+	public synchronized void setThreshold(long threshold)
+	{
+		_threshold = threshold;
+	}
+
+	/**
+	 * The setCapacity mutator sets the number of records that are kept.
+	 * The current records are cleared.
+	 * 
+	 * @param capacity The number of records - has to be greater than zero
+	 */
+	public synchronized void setCapacity(int capacity)
+	{
+		if (capacity > 0)
+		{
+			_records = new StallRecord[capacity];
+			_nextRecord = 0;
+			_numRecords = 0;
+		}
+	}
+
+	/**
+	 * The getRecords accessor method returns the recorded stalls.
+	 * 
+	 * @return The StallRecords, oldest first
+	 */
+	public synchronized StallRecord[] getRecords()
+	{
+		StallRecord[] records = new StallRecord[_numRecords];
+		int first = _nextRecord - _numRecords + _records.length;
+		for (int i = 0; i < _numRecords; ++i)
+			records[i] = _records[(first + i) % _records.length];
+		return records;
+	}
+
+	/**
+	 * The clear method removes all recorded stalls.
+	 * 
+	 */
+	public synchronized void clear()
+	{
+		for (int i = 0; i < _records.length; ++i)
+			_records[i] = null;
+		_nextRecord = 0;
+		_numRecords = 0;
+	}
+
+	/**
+	 * The startMonitor method starts checking periodically if the current 
+	 * event thread task has been running longer than the threshold.
+	 * 
+	 * @param period The time between two checks in milliseconds
+	 */
+	public synchronized void startMonitor(long period)
+	{
+		stopMonitor();
+		_monitor = new Timer();
+		_monitor.schedule(new TimerTask()
+		{
+			public void run()
+			{
+				checkActiveTask();
+			}
+		}, period, period);
+	}
+
+	/**
+	 * The stopMonitor method stops the monitor.
+	 * 
+	 */
+	public synchronized void stopMonitor()
+	{
+		if (_monitor != null)
+		{
+			_monitor.cancel();
+			_monitor = null;
+		}
+	}
+
+	/**
+	 * The begin method is called by the framework when an operation starts.
+	 * 
+	 * @param kind The kind of the operation
+	 * @param subject The responsible listener, View or operation name
+	 * @param controllerId The id of the responsible Controller, 0 if unknown
+	 * @return The start time, -1 if the watchdog is disabled
+	 */
+	long begin(int kind, Object subject, int controllerId)
+	{
+		if (!_enabled)
+			return -1;
+
+		long start = System.currentTimeMillis();
+		if (kind != ModelNotification && Application.isEventDispatchThread())
+		{
+			synchronized (this)
+			{
+				if (_activeDepth++ == 0)
+				{
+					_activeKind = kind;
+					_activeSubject = subject;
+					_activeControllerId = controllerId;
+					_activeStart = start;
+					_activeRecorded = false;
+				}
+			}
+		}
+		return start;
+	}
+
+	/**
+	 * The end method is called by the framework when an operation finished.
+	 * 
+	 * @param kind The kind of the operation
+	 * @param subject The responsible listener, View or operation name
+	 * @param controllerId The id of the responsible Controller, 0 if unknown
+	 * @param start The start time returned by begin
+	 */
+	void end(int kind, Object subject, int controllerId, long start)
+	{
+		if (start < 0)
+			return;
+
+		long duration = System.currentTimeMillis() - start;
+		synchronized (this)
+		{
+			if (kind != ModelNotification && Application.isEventDispatchThread() && _activeDepth > 0)
+			{
+				if (--_activeDepth == 0)
+					_activeSubject = null;
+			}
+			if (duration >= _threshold)
+				record(new StallRecord(kind, describe(subject), controllerId, start, duration, false));
+		}
+	}
+
+	private void checkActiveTask()
+	{
+		synchronized (this)
+		{
+			if (_activeDepth == 0 || _activeRecorded)
+				return;
+			long duration = System.currentTimeMillis() - _activeStart;
+			if (duration >= _threshold)
+			{
+				record(new StallRecord(_activeKind, describe(_activeSubject), _activeControllerId, _activeStart, duration, true));
+				_activeRecorded = true;
+			}
+		}
+	}
+
+	private void record(StallRecord record)
+	{
+		_records[_nextRecord] = record;
+		_nextRecord = (_nextRecord + 1) % _records.length;
+		if (_numRecords < _records.length)
+			++_numRecords;
+	}
+
+	private static String describe(Object subject)
+	{
+		if (subject == null)
+			return "unknown";
+		if (subject instanceof String)
+			return (String) subject;
+		return subject.getClass().getName();
+	}
+}
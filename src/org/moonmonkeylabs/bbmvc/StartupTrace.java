@@ -0,0 +1,174 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import java.util.Vector;
+
+/**
+ * The StartupTrace class timestamps the framework phases between the
+ * application's launch and its first screen: the creation of the 
+ * Navigator, each Controller registration, the first navigate and 
+ * the first frame. The times are relative to the start time, which 
+ * the application should set as early as possible in its main method.
+ * The trace is disabled by default, callers that build the name of a
+ * phase check isEnabled first.
+ * 
+ * @version 1.0
+ */
+public final class StartupTrace
+{
+	private static final int MaxPhases = 256;
+	private static final StartupTrace _instance = new StartupTrace();
+
+	private boolean _enabled;
+	private long _startTime;
+	private Vector _phases;
+	private Vector _times;
+
+	/**
+	 * Default constructor for StartupTrace. The start time defaults
+	 * to the first use of the trace.
+	 * 
+	 */
+	private StartupTrace()
+	{
+		_startTime = System.currentTimeMillis();
+		_phases = new Vector();
+		_times = new Vector();
+	}
+
+	/**
+	 * The getInstance static method returns the StartupTrace instance.
+	 * 
+	 * @return The StartupTrace
+	 */
+	public static StartupTrace getInstance()
+	{
+		return _instance;
+	}
+
+	/**
+	 * The setEnabled mutator enables or disables the trace.
+	 * 
+	 * @param enabled True to record phases
+	 */
+	public void setEnabled(boolean enabled)
+	{
+		_enabled = enabled;
+	}
+
+	/**
+	 * The isEnabled accessor method returns if the trace is enabled.
+	 * 
+	 * @return True if phases are recorded
+	 */
+	public boolean isEnabled()
+	{
+		return _enabled;
+	}
+
+	/**
+	 * The setStartTime mutator sets the launch time all phases are
+	 * relative to.
+	 * 
+	 * @param startTime The launch time in milliseconds
+	 */
+	public synchronized void setStartTime(long startTime)
+	{
+		_startTime = startTime;
+	}
+
+	/**
+	 * The mark method records that a phase was reached.
+	 * 
+	 * @param phase The name of the phase
+	 */
+	public synchronized void mark(String phase)
+	{
+		if (_enabled && _phases.size() < MaxPhases)
+		{
+			_phases.addElement(phase);
+			_times.addElement(new Long(System.currentTimeMillis()));
+		}
+	}
+
+	/**
+	 * The getPhaseCount accessor method returns the number of recorded phases.
+	 * 
+	 * @return The number of phases
+	 */
+	public synchronized int getPhaseCount()
+	{
+		return _phases.size();
+	}
+
+	/**
+	 * The getPhase accessor method returns the name of a recorded phase.
+	 * 
+	 * @param index The index of the phase
+	 * @return The name of the phase
+	 */
+	public synchronized String getPhase(int index)
+	{
+		return (String) _phases.elementAt(index);
+	}
+
+	/**
+	 * The getPhaseTime accessor method returns when a phase was reached.
+	 * 
+	 * @param index The index of the phase
+	 * @return The time in milliseconds since the start time
+	 */
+	public synchronized long getPhaseTime(int index)
+	{
+		return ((Long) _times.elementAt(index)).longValue() - _startTime;
+	}
+
+	/**
+	 * The export method returns all phases, one per line, as the time 
+	 * since the start time, the time since the previous phase and the 
+	 * phase's name separated by tabs.
+	 * 
+	 * @return The exported trace
+	 */
+	public synchronized String export()
+	{
+		StringBuffer buffer = new StringBuffer();
+		long previous = 0;
+		int numPhases = _phases.size();
+		for (int i = 0; i < numPhases; ++i)
+		{
+			long time = getPhaseTime(i);
+			buffer.append(time).append('\t').append(time - previous).append('\t');
+			buffer.append(getPhase(i)).append('\n');
+			previous = time;
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * The clear method removes all recorded phases.
+	 * 
+	 */
+	public synchronized void clear()
+	{
+		_phases.removeAllElements();
+		_times.removeAllElements();
+	}
+}
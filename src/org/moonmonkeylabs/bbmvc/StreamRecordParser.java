@@ -0,0 +1,52 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import java.io.IOException;
+import java.util.Vector;
+
+/**
+ * The StreamRecordParser interface is used by a StreamingModelAdapter
+ * to turn the chunks of a stream into records. A record can span
+ * several chunks, the parser keeps the incomplete part until the rest
+ * arrives.
+ * 
+ * @version 1.0
+ */
+public interface StreamRecordParser
+{
+	/**
+	 * The parse method parses the next chunk of the stream.
+	 * 
+	 * @param data The buffer that holds the chunk, it is reused for the next chunk
+	 * @param offset The offset of the chunk in the buffer
+	 * @param length The length of the chunk
+	 * @param records The complete records are added to it
+	 * @throws IOException Thrown if the data is malformed
+	 */
+	public abstract void parse(byte[] data, int offset, int length, Vector records) throws IOException;
+
+	/**
+	 * The end method is invoked at the end of the stream.
+	 * 
+	 * @param records The last records are added to it
+	 * @throws IOException Thrown if the stream ended within a record
+	 */
+	public abstract void end(Vector records) throws IOException;
+}
@@ -0,0 +1,39 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+/**
+ * The StreamRecordSink interface is implemented by a Model that is fed
+ * by a StreamingModelAdapter. It receives the parsed records in batches
+ * and usually notifies its ModelListeners once per batch.
+ * 
+ * @version 1.0
+ */
+public interface StreamRecordSink
+{
+	/**
+	 * Invoked on the adapter's worker thread with the next batch of
+	 * records. The next batch is not passed before this method returned,
+	 * so a Model that notifies its listeners here slows the stream down
+	 * to the speed of the UI.
+	 * 
+	 * @param records The records in the order of the stream
+	 */
+	public abstract void addRecords(Object[] records);
+}
@@ -0,0 +1,297 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Vector;
+
+/**
+ * The StreamingModelAdapter class feeds a Model from a stream that
+ * arrives in chunks, e.g. a sync payload or a feed. Each chunk is
+ * parsed right away and the records are passed to the Model's
+ * StreamRecordSink in batches on a worker thread, so the first records
+ * show up before the stream has ended.
+ * 
+ * A batch holds at most the maximum batch size. While the worker is
+ * idle, a partial batch is passed at the end of each chunk, once the
+ * worker falls behind the batches fill up. When the maximum number of
+ * batches is pending, the producer is blocked in write until the sink
+ * caught up. A sink that notifies its ModelListeners with each batch
+ * therefore slows the producer down to the speed of the UI.
+ * 
+ * The write methods block and must not be called on the event thread.
+ * The parsed records belong to the producer thread, cancel only marks
+ * the adapter as stopped. If the sink throws, the batches after it are
+ * dropped and the next write or close throws an IOException.
+ * 
+ * @version 1.0
+ */
+public class StreamingModelAdapter
+{
+	private StreamRecordParser _parser;
+	private StreamRecordSink _sink;
+	private int _maxBatchSize;
+	private int _maxPendingBatches;
+	private SerialWorker _worker;
+	private Vector _records;
+	private int _pendingBatches;
+	private boolean _cancelled;
+	private boolean _closed;
+	private Throwable _failure;
+
+	/**
+	 * A constructor that takes the parser, the sink and the batch limits
+	 * 
+	 * @param parser The StreamRecordParser that parses the chunks
+	 * @param sink The StreamRecordSink the records are passed to, usually the Model
+	 * @param maxBatchSize The maximum number of records per batch
+	 * @param maxPendingBatches The number of batches that can be pending before the producer is blocked
+	 */
+	public StreamingModelAdapter(StreamRecordParser parser, StreamRecordSink sink, int maxBatchSize, int maxPendingBatches)
+	{
+		_parser = parser;
+		_sink = sink;
+		_maxBatchSize = Math.max(1, maxBatchSize);
+		_maxPendingBatches = Math.max(1, maxPendingBatches);
+		_worker = new SerialWorker();
+		_records = new Vector();
+	}
+
+	/**
+	 * The write method parses the next chunk of the stream.
+	 * 
+	 * @param data The buffer that holds the chunk, it can be reused once write returns
+	 * @param offset The offset of the chunk in the buffer
+	 * @param length The length of the chunk
+	 * @throws IOException Thrown if the chunk is malformed, the sink failed or the adapter was closed or cancelled
+	 */
+	public void write(byte[] data, int offset, int length) throws IOException
+	{
+		checkRunning();
+		synchronized (this)
+		{
+			if (_closed)
+				throw new IOException("Stream is closed");
+		}
+		_parser.parse(data, offset, length, _records);
+		while (_records.size() >= _maxBatchSize)
+			submitBatch(_maxBatchSize);
+
+		// Nothing is held back while the sink keeps up
+		if (!_records.isEmpty() && getPendingBatchCount() == 0)
+			submitBatch(_records.size());
+	}
+
+	/**
+	 * The close method ends the stream. It passes the last records and
+	 * waits until the sink received all batches.
+	 * 
+	 * @throws IOException Thrown if the stream ended within a record, the sink failed or the adapter was cancelled
+	 */
+	public void close() throws IOException
+	{
+		// A cancelled or failed adapter throws even though cancel already closed it
+		checkRunning();
+		synchronized (this)
+		{
+			if (_closed)
+				return;
+			_closed = true;
+		}
+		_parser.end(_records);
+		while (!_records.isEmpty())
+			submitBatch(Math.min(_maxBatchSize, _records.size()));
+
+		synchronized (this)
+		{
+			while (_pendingBatches > 0 && !_cancelled)
+				waitForBatch();
+		}
+		checkRunning();
+	}
+
+	/**
+	 * The readFrom method feeds the adapter from an InputStream until
+	 * the end of the stream and closes the adapter. The InputStream is
+	 * not closed.
+	 * 
+	 * @param in The InputStream
+	 * @param chunkSize The size of the chunks that are read
+	 * @throws IOException Thrown if the stream cannot be read or parsed
+	 */
+	public void readFrom(InputStream in, int chunkSize) throws IOException
+	{
+		byte[] buffer = new byte[Math.max(1, chunkSize)];
+		int length;
+		while ((length = in.read(buffer)) != -1)
+		{
+			if (length > 0)
+				write(buffer, 0, length);
+		}
+		close();
+	}
+
+	/**
+	 * The cancel method stops the adapter. Batches that were not passed
+	 * yet are dropped and a blocked producer is released. The records
+	 * that were parsed but not queued are dropped by the producer's next
+	 * write or close.
+	 * 
+	 */
+	public synchronized void cancel()
+	{
+		_cancelled = true;
+		_closed = true;
+		notifyAll();
+	}
+
+	/**
+	 * The getPendingBatchCount accessor method returns the number of
+	 * batches the sink has not finished yet.
+	 * 
+	 * @return The number of pending batches
+	 */
+	public synchronized int getPendingBatchCount()
+	{
+		return _pendingBatches;
+	}
+
+	/**
+	 * The dispatch method passes a batch to the sink on the worker
+	 * thread. It can be overridden, e.g. to notify a different Model.
+	 * 
+	 * @param records The records of the batch
+	 */
+	protected void dispatch(Object[] records)
+	{
+		_sink.addRecords(records);
+	}
+
+	/**
+	 * The submitBatch method takes records from the front of the parsed
+	 * records and queues them as a batch. It blocks while the maximum
+	 * number of batches is pending.
+	 * 
+	 * @param size The number of records
+	 * @throws IOException Thrown if the adapter was cancelled
+	 */
+	private void submitBatch(int size) throws IOException
+	{
+		synchronized (this)
+		{
+			while (_pendingBatches >= _maxPendingBatches && !isStopped())
+				waitForBatch();
+		}
+		checkRunning();
+
+		int numRecords = _records.size();
+		final Object[] batch = new Object[size];
+		for (int i = 0; i < size; ++i)
+			batch[i] = _records.elementAt(i);
+		if (size == numRecords)
+			_records.removeAllElements();
+		else
+		{
+			// The rest is copied once instead of shifting it for each record
+			Vector rest = new Vector(Math.max(_maxBatchSize, numRecords - size));
+			for (int i = size; i < numRecords; ++i)
+				rest.addElement(_records.elementAt(i));
+			_records = rest;
+		}
+
+		synchronized (this)
+		{
+			++_pendingBatches;
+		}
+
+		_worker.execute(new Runnable()
+		{
+			public void run()
+			{
+				Throwable failure = null;
+				try
+				{
+					if (!isStopped())
+						dispatch(batch);
+				}
+				catch (Throwable t)
+				{
+					failure = t;
+				}
+				finally
+				{
+					synchronized (StreamingModelAdapter.this)
+					{
+						if (_failure == null)
+							_failure = failure;
+						--_pendingBatches;
+						StreamingModelAdapter.this.notifyAll();
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * The isStopped method checks if the adapter was cancelled or the
+	 * sink failed. Batches are not passed to the sink once it stopped.
+	 * 
+	 * @return True if the adapter stopped
+	 */
+	private synchronized boolean isStopped()
+	{
+		return _cancelled || _failure != null;
+	}
+
+	/**
+	 * The checkRunning method is called by the producer. Once the adapter
+	 * stopped, it drops the parsed records and throws.
+	 * 
+	 * @throws IOException Thrown if the sink failed or the adapter was cancelled
+	 */
+	private void checkRunning() throws IOException
+	{
+		Throwable failure;
+		boolean cancelled;
+		synchronized (this)
+		{
+			failure = _failure;
+			cancelled = _cancelled;
+		}
+		if (failure == null && !cancelled)
+			return;
+		_records.removeAllElements();
+		if (failure != null)
+			throw new IOException("Sink failed: " + failure.toString());
+		throw new IOException("Stream was cancelled");
+	}
+
+	private void waitForBatch() throws IOException
+	{
+		try
+		{
+			wait();
+		}
+		catch (InterruptedException e)
+		{
+			throw new IOException("Interrupted while waiting for the sink");
+		}
+	}
+}
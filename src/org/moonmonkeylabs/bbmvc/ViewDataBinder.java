@@ -0,0 +1,89 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import net.rim.device.api.system.Application;
+import net.rim.device.api.util.IntVector;
+
+/**
+ * The ViewDataBinder class is the ModelListener that applies a
+ * Controller's ViewDataBinding. Only values that changed are put into
+ * the ViewData. The View is not updated right away, the changed keys
+ * are collected and the View's updateView is called once per key
+ * after all pending events were processed, so that a burst of model
+ * notifications results in a single update per key.
+ * 
+ * @version 1.0
+ */
+final class ViewDataBinder implements ModelListener, Runnable
+{
+	private Controller _controller;
+	private ViewDataBinding _binding;
+	private IntVector _changedKeys;
+	private boolean _updateScheduled;
+
+	/**
+	 * A constructor that takes the Controller and its binding table
+	 * 
+	 * @param controller The Controller whose ViewData is updated
+	 * @param binding The Controller's ViewDataBinding
+	 */
+	ViewDataBinder(Controller controller, ViewDataBinding binding)
+	{
+		_controller = controller;
+		_binding = binding;
+		_changedKeys = new IntVector();
+	}
+
+	/**
+	 * Invoked on the event thread when the bound Model changes.
+	 * 
+	 * @param key A numerical key identifying the event
+	 * @param args The data that is passed to the subscriber
+	 */
+	public void modelChanged(int key, Object[] args)
+	{
+		ViewDataHashtable viewData = _controller.getViewData();
+		if (viewData == null)
+			return;
+
+		_binding.apply(key, args, viewData, _changedKeys);
+		if (!_updateScheduled && !_changedKeys.isEmpty())
+		{
+			_updateScheduled = true;
+			Application.getApplication().invokeLater(this);
+		}
+	}
+
+	/**
+	 * The run method updates the View for the changed keys and must
+	 * not be called directly.
+	 * 
+	 */
+	public void run()
+	{
+		int[] changedKeys = _changedKeys.toArray();
+		_changedKeys.removeAllElements();
+		_updateScheduled = false;
+		for (int i = 0; i < changedKeys.length; ++i)
+			_controller.updateView(changedKeys[i]);
+		// Derived entries that depend on the changed keys
+		_controller.updateDirtyViews();
+	}
+}
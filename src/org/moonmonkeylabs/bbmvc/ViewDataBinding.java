@@ -0,0 +1,234 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import java.util.Hashtable;
+import java.util.Vector;
+
+import net.rim.device.api.util.IntVector;
+
+/**
+ * The ViewDataBinding class is a table that maps the keys of model
+ * notifications to ViewData keys. Each binding takes one of the
+ * notification's arguments, optionally converts it and puts it into
+ * the ViewData under its key. A model key can have several bindings.
+ * 
+ * A Controller declares its bindings in onCreateBinding. The table is
+ * created and compiled into sorted arrays once per Controller class
+ * and shared by all instances of the class. Once it is shared, the
+ * table is frozen and bind throws an IllegalStateException.
+ * 
+ * @version 1.0
+ */
+public final class ViewDataBinding
+{
+	private static final Hashtable _bindings = new Hashtable();
+
+	private IntVector _declaredModelKeys;
+	private IntVector _declaredArgIndexes;
+	private IntVector _declaredViewKeys;
+	private Vector _declaredConverters;
+	private int[] _modelKeys;
+	private int[] _argIndexes;
+	private int[] _viewKeys;
+	private BindingConverter[] _converters;
+	private boolean _frozen;
+
+	/**
+	 * Default constructor for ViewDataBinding
+	 * 
+	 */
+	public ViewDataBinding()
+	{
+		_declaredModelKeys = new IntVector();
+		_declaredArgIndexes = new IntVector();
+		_declaredViewKeys = new IntVector();
+		_declaredConverters = new Vector();
+	}
+
+	/**
+	 * The bind method binds the first argument of a model notification
+	 * to a ViewData key.
+	 * 
+	 * @param modelKey The key of the model notification
+	 * @param viewKey The ViewData key the value is put under
+	 * @return The ViewDataBinding, so that bindings can be chained
+	 */
+	public ViewDataBinding bind(int modelKey, int viewKey)
+	{
+		return bind(modelKey, 0, viewKey, null);
+	}
+
+	/**
+	 * The bind method binds an argument of a model notification to a
+	 * ViewData key.
+	 * 
+	 * @param modelKey The key of the model notification
+	 * @param argIndex The index of the argument that holds the value
+	 * @param viewKey The ViewData key the value is put under
+	 * @param converter The converter for the value, can be null
+	 * @return The ViewDataBinding, so that bindings can be chained
+	 * @throws IllegalStateException Thrown if the table is already shared by a Controller class
+	 */
+	public synchronized ViewDataBinding bind(int modelKey, int argIndex, int viewKey, BindingConverter converter)
+	{
+		if (_frozen)
+			throw new IllegalStateException("Binding is already in use");
+		_declaredModelKeys.addElement(modelKey);
+		_declaredArgIndexes.addElement(argIndex);
+		_declaredViewKeys.addElement(viewKey);
+		_declaredConverters.addElement(converter);
+		_modelKeys = null;
+		return this;
+	}
+
+	/**
+	 * The forController static method returns the binding table of a
+	 * Controller's class. The first call for a class creates the table
+	 * with the Controller's onCreateBinding and compiles it.
+	 * 
+	 * @param controller The Controller
+	 * @return The ViewDataBinding, null if the Controller does not declare one
+	 */
+	static ViewDataBinding forController(Controller controller)
+	{
+		Class type = controller.getClass();
+		synchronized (_bindings)
+		{
+			ViewDataBinding binding = (ViewDataBinding) _bindings.get(type);
+			if (binding == null)
+			{
+				binding = controller.onCreateBinding();
+				if (binding == null)
+					return null;
+				binding.freeze();
+				_bindings.put(type, binding);
+			}
+			return binding;
+		}
+	}
+
+	/**
+	 * The compile method sorts the declared bindings by model key into
+	 * arrays, so that the bindings of a key are found by a binary search.
+	 * The declaration order is kept for bindings of the same key.
+	 * 
+	 */
+	synchronized void compile()
+	{
+		if (_modelKeys != null)
+			return;
+
+		int numBindings = _declaredModelKeys.size();
+		int[] modelKeys = new int[numBindings];
+		int[] argIndexes = new int[numBindings];
+		int[] viewKeys = new int[numBindings];
+		BindingConverter[] converters = new BindingConverter[numBindings];
+		for (int i = 0; i < numBindings; ++i)
+		{
+			// Insertion sort, the tables are small
+			int modelKey = _declaredModelKeys.elementAt(i);
+			int j = i;
+			while (j > 0 && modelKeys[j - 1] > modelKey)
+			{
+				modelKeys[j] = modelKeys[j - 1];
+				argIndexes[j] = argIndexes[j - 1];
+				viewKeys[j] = viewKeys[j - 1];
+				converters[j] = converters[j - 1];
+				--j;
+			}
+			modelKeys[j] = modelKey;
+			argIndexes[j] = _declaredArgIndexes.elementAt(i);
+			viewKeys[j] = _declaredViewKeys.elementAt(i);
+			converters[j] = (BindingConverter) _declaredConverters.elementAt(i);
+		}
+		_argIndexes = argIndexes;
+		_viewKeys = viewKeys;
+		_converters = converters;
+		_modelKeys = modelKeys;
+	}
+
+	/**
+	 * The freeze method compiles the table and prevents further bindings,
+	 * so that a table shared by all instances of a class cannot change.
+	 * 
+	 */
+	synchronized void freeze()
+	{
+		compile();
+		_frozen = true;
+		_declaredModelKeys = null;
+		_declaredArgIndexes = null;
+		_declaredViewKeys = null;
+		_declaredConverters = null;
+	}
+
+	/**
+	 * The apply method puts the values of a model notification into the
+	 * ViewData. Entries whose value did not change are left alone.
+	 * 
+	 * @param modelKey The key of the model notification
+	 * @param args The arguments of the model notification
+	 * @param viewData The ViewData
+	 * @param changedKeys The ViewData keys that changed are added to it
+	 */
+	void apply(int modelKey, Object[] args, ViewDataHashtable viewData, IntVector changedKeys)
+	{
+		if (_modelKeys == null)
+			compile();
+
+		for (int i = findFirst(modelKey); i >= 0 && i < _modelKeys.length && _modelKeys[i] == modelKey; ++i)
+		{
+			Object value = args != null && _argIndexes[i] < args.length ? args[_argIndexes[i]] : null;
+			if (_converters[i] != null)
+				value = _converters[i].convert(value);
+
+			int viewKey = _viewKeys[i];
+			Object currentValue = viewData.get(viewKey);
+			if (value == currentValue || (value != null && value.equals(currentValue)))
+				continue;
+			if (value != null)
+				viewData.put(viewKey, value);
+			else
+				viewData.remove(viewKey);
+			if (!changedKeys.contains(viewKey))
+				changedKeys.addElement(viewKey);
+		}
+	}
+
+	private int findFirst(int modelKey)
+	{
+		int low = 0;
+		int high = _modelKeys.length - 1;
+		int found = -1;
+		while (low <= high)
+		{
+			int middle = (low + high) >>> 1;
+			if (_modelKeys[middle] < modelKey)
+				low = middle + 1;
+			else
+			{
+				if (_modelKeys[middle] == modelKey)
+					found = middle;
+				high = middle - 1;
+			}
+		}
+		return found;
+	}
+}
@@ -0,0 +1,540 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import net.rim.device.api.util.IntEnumeration;
+
+/**
+ * The ViewDataCodec class encodes a ViewDataHashtable to a compact 
+ * tagged binary stream without using reflection or Persistable objects.
+ * 
+ * The stream starts with the optional Model entry, followed by one entry
+ * per key and an end tag. Each entry is a type tag, the key and the 
+ * value. Keys, lengths and int values are written as variable length
+ * integers. Since every value can be skipped based on its tag, a single
+ * key can be read without decoding the rest of the table.
+ * 
+ * Supported values are String, Integer, Long, Boolean, Double, byte[],
+ * int[] and String[], which can contain nulls. The Model is encoded by
+ * a ModelCodec. Lengths are validated while reading, so corrupt data 
+ * causes an IOException instead of a huge allocation.
+ * 
+ * @version 1.0
+ */
+public final class ViewDataCodec
+{
+	private static final byte TagEnd = 0;
+	private static final byte TagModel = 1;
+	private static final byte TagNull = 2;
+	private static final byte TagTrue = 3;
+	private static final byte TagFalse = 4;
+	private static final byte TagInteger = 5;
+	private static final byte TagLong = 6;
+	private static final byte TagDouble = 7;
+	private static final byte TagString = 8;
+	private static final byte TagBytes = 9;
+	private static final byte TagIntArray = 10;
+	private static final byte TagStringArray = 11;
+
+	// The length of a null String in a String[]
+	private static final int NullLength = -1;
+	// Arrays are grown in steps of this size while reading
+	static final int ReadChunk = 1024;
+
+	private ModelCodec _modelCodec;
+	private boolean _skipUnsupported;
+
+	/**
+	 * Default constructor for ViewDataCodec. The Model is not encoded
+	 * and unsupported values cause an IOException.
+	 * 
+	 */
+	public ViewDataCodec()
+	{
+		this(null, false);
+	}
+
+	/**
+	 * A constructor that takes the ModelCodec and how unsupported values are handled
+	 * 
+	 * @param modelCodec The ModelCodec, null if the Model should not be encoded
+	 * @param skipUnsupported True to skip values of unsupported types, false to throw an IOException
+	 */
+	public ViewDataCodec(ModelCodec modelCodec, boolean skipUnsupported)
+	{
+		_modelCodec = modelCodec;
+		_skipUnsupported = skipUnsupported;
+	}
+
+	/**
+	 * The encode method encodes a ViewDataHashtable to a byte array.
+	 * 
+	 * @param viewData The ViewDataHashtable
+	 * @return The encoded ViewData
+	 * @throws IOException Thrown if the ViewData cannot be encoded
+	 */
+	public byte[] encode(ViewDataHashtable viewData) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		write(viewData, out);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * The decode method decodes a byte array written by encode.
+	 * 
+	 * @param data The encoded ViewData
+	 * @return The decoded ViewDataHashtable
+	 * @throws IOException Thrown if the data is not valid
+	 */
+	public ViewDataHashtable decode(byte[] data) throws IOException
+	{
+		return read(new DataInputStream(new ByteArrayInputStream(data)));
+	}
+
+	/**
+	 * The decodeValue method decodes the value of a single key without
+	 * decoding the other values.
+	 * 
+	 * @param data The encoded ViewData
+	 * @param key The key of the value
+	 * @return The value, null if the key is not in the data
+	 * @throws IOException Thrown if the data is not valid
+	 */
+	public Object decodeValue(byte[] data, int key) throws IOException
+	{
+		return readValue(new DataInputStream(new ByteArrayInputStream(data)), key);
+	}
+
+	/**
+	 * The write method writes the Model and all entries of a ViewDataHashtable 
+	 * followed by the end tag.
+	 * 
+	 * @param viewData The ViewDataHashtable
+	 * @param out The stream the ViewData is written to
+	 * @throws IOException Thrown if the ViewData cannot be written
+	 */
+	public void write(ViewDataHashtable viewData, DataOutputStream out) throws IOException
+	{
+		writeModel(viewData.getModel(), out);
+		IntEnumeration keys = viewData.keys();
+		while (keys.hasMoreElements())
+		{
+			int key = keys.nextElement();
+			writeEntry(key, viewData.get(key), out);
+		}
+		writeEnd(out);
+	}
+
+	/**
+	 * The writeModel method writes the Model entry. It has to be written
+	 * before any other entry and is skipped if no ModelCodec is set.
+	 * 
+	 * @param model The Model, nothing is written if it is null
+	 * @param out The stream the Model is written to
+	 * @throws IOException Thrown if the Model cannot be written
+	 */
+	public void writeModel(Object model, DataOutputStream out) throws IOException
+	{
+		if (model == null || _modelCodec == null)
+			return;
+
+		// The Model is length prefixed so that readers without a ModelCodec can skip it
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream modelOut = new DataOutputStream(bytes);
+		_modelCodec.writeModel(model, modelOut);
+		modelOut.flush();
+		out.writeByte(TagModel);
+		writeVarInt(bytes.size(), out);
+		out.write(bytes.toByteArray());
+	}
+
+	/**
+	 * The writeEntry method writes a single entry. It can be used to
+	 * stream entries without building a ViewDataHashtable first.
+	 * 
+	 * @param key The key of the entry
+	 * @param value The value of the entry
+	 * @param out The stream the entry is written to
+	 * @throws IOException Thrown if the entry cannot be written
+	 */
+	public void writeEntry(int key, Object value, DataOutputStream out) throws IOException
+	{
+		byte tag = getTag(value);
+		if (tag == TagEnd)
+		{
+			if (_skipUnsupported)
+				return;
+			throw new IOException("Unsupported value for key " + key);
+		}
+
+		out.writeByte(tag);
+		writeVarInt(key, out);
+		switch (tag)
+		{
+			case TagInteger:
+				writeVarInt(((Integer) value).intValue(), out);
+				break;
+			case TagLong:
+				out.writeLong(((Long) value).longValue());
+				break;
+			case TagDouble:
+				out.writeDouble(((Double) value).doubleValue());
+				break;
+			case TagString:
+				writeString((String) value, out);
+				break;
+			case TagBytes:
+				byte[] bytes = (byte[]) value;
+				writeVarInt(bytes.length, out);
+				out.write(bytes);
+				break;
+			case TagIntArray:
+				int[] ints = (int[]) value;
+				writeVarInt(ints.length, out);
+				for (int i = 0; i < ints.length; ++i)
+					writeVarInt(ints[i], out);
+				break;
+			case TagStringArray:
+				String[] strings = (String[]) value;
+				writeVarInt(strings.length, out);
+				for (int i = 0; i < strings.length; ++i)
+					writeString(strings[i], out);
+				break;
+		}
+	}
+
+	/**
+	 * The writeEnd method writes the end tag that closes a stream of entries.
+	 * 
+	 * @param out The stream the end tag is written to
+	 * @throws IOException Thrown if the end tag cannot be written
+	 */
+	public void writeEnd(DataOutputStream out) throws IOException
+	{
+		out.writeByte(TagEnd);
+	}
+
+	/**
+	 * The read method reads a stream of entries up to and including
+	 * the end tag into a new ViewDataHashtable.
+	 * 
+	 * @param in The stream the ViewData is read from
+	 * @return The decoded ViewDataHashtable
+	 * @throws IOException Thrown if the stream is not valid
+	 */
+	public ViewDataHashtable read(DataInputStream in) throws IOException
+	{
+		ViewDataHashtable viewData = new ViewDataHashtable();
+		read(in, viewData);
+		return viewData;
+	}
+
+	/**
+	 * The read method reads a stream of entries up to and including
+	 * the end tag into an existing ViewDataHashtable.
+	 * 
+	 * @param in The stream the ViewData is read from
+	 * @param viewData The ViewDataHashtable the entries are put into
+	 * @throws IOException Thrown if the stream is not valid
+	 */
+	public void read(DataInputStream in, ViewDataHashtable viewData) throws IOException
+	{
+		byte tag;
+		while ((tag = in.readByte()) != TagEnd)
+		{
+			if (tag == TagModel)
+			{
+				Object model = readModel(in);
+				if (model != null)
+					viewData.setModel(model);
+			}
+			else
+			{
+				int key = readVarInt(in);
+				Object value = readValue(tag, in);
+				// Null values cannot be kept in the hashtable
+				if (value != null)
+					viewData.put(key, value);
+			}
+		}
+	}
+
+	/**
+	 * The readValue method reads the value of a single key from a stream
+	 * of entries. All other values are skipped without being decoded. The 
+	 * stream is left right after the value or after the end tag.
+	 * 
+	 * @param in The stream the value is read from
+	 * @param key The key of the value
+	 * @return The value, null if the key is not in the stream
+	 * @throws IOException Thrown if the stream is not valid
+	 */
+	public Object readValue(DataInputStream in, int key) throws IOException
+	{
+		byte tag;
+		while ((tag = in.readByte()) != TagEnd)
+		{
+			if (tag == TagModel)
+				skipBytes(readLength(in), in);
+			else if (readVarInt(in) == key)
+				return readValue(tag, in);
+			else
+				skipValue(tag, in);
+		}
+		return null;
+	}
+
+	private Object readModel(DataInputStream in) throws IOException
+	{
+		int length = readLength(in);
+		if (_modelCodec == null)
+		{
+			skipBytes(length, in);
+			return null;
+		}
+
+		byte[] bytes = readBytes(length, in);
+		return _modelCodec.readModel(new DataInputStream(new ByteArrayInputStream(bytes)));
+	}
+
+	private static byte getTag(Object value)
+	{
+		if (value == null)
+			return TagNull;
+		if (value instanceof String)
+			return TagString;
+		if (value instanceof Integer)
+			return TagInteger;
+		if (value instanceof Boolean)
+			return ((Boolean) value).booleanValue() ? TagTrue : TagFalse;
+		if (value instanceof Long)
+			return TagLong;
+		if (value instanceof Double)
+			return TagDouble;
+		if (value instanceof byte[])
+			return TagBytes;
+		if (value instanceof int[])
+			return TagIntArray;
+		if (value instanceof String[])
+			return TagStringArray;
+		return TagEnd;
+	}
+
+	private static Object readValue(byte tag, DataInputStream in) throws IOException
+	{
+		switch (tag)
+		{
+			case TagNull:
+				return null;
+			case TagTrue:
+				return new Boolean(true);
+			case TagFalse:
+				return new Boolean(false);
+			case TagInteger:
+				return new Integer(readVarInt(in));
+			case TagLong:
+				return new Long(in.readLong());
+			case TagDouble:
+				return new Double(in.readDouble());
+			case TagString:
+				return readString(in);
+			case TagBytes:
+				return readBytes(readLength(in), in);
+			case TagIntArray:
+				return readInts(readLength(in), in);
+			case TagStringArray:
+				return readStrings(readLength(in), in);
+		}
+		throw new IOException("Unknown tag " + tag);
+	}
+
+	private static void skipValue(byte tag, DataInputStream in) throws IOException
+	{
+		switch (tag)
+		{
+			case TagNull:
+			case TagTrue:
+			case TagFalse:
+				return;
+			case TagInteger:
+				readVarInt(in);
+				return;
+			case TagLong:
+			case TagDouble:
+				skipBytes(8, in);
+				return;
+			case TagString:
+			case TagBytes:
+				skipBytes(readLength(in), in);
+				return;
+			case TagIntArray:
+				for (int count = readLength(in); count > 0; --count)
+					readVarInt(in);
+				return;
+			case TagStringArray:
+				for (int count = readLength(in); count > 0; --count)
+				{
+					int length = readVarInt(in);
+					if (length != NullLength)
+						skipBytes(checkLength(length), in);
+				}
+				return;
+		}
+		throw new IOException("Unknown tag " + tag);
+	}
+
+	private static void writeString(String value, DataOutputStream out) throws IOException
+	{
+		// Only the elements of a String[] can be null
+		if (value == null)
+		{
+			writeVarInt(NullLength, out);
+			return;
+		}
+		byte[] bytes = value.getBytes("UTF-8");
+		writeVarInt(bytes.length, out);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException
+	{
+		return new String(readBytes(readLength(in), in), "UTF-8");
+	}
+
+	private static String[] readStrings(int count, DataInputStream in) throws IOException
+	{
+		String[] strings = new String[Math.min(count, ReadChunk)];
+		for (int i = 0; i < count; ++i)
+		{
+			if (i == strings.length)
+				strings = (String[]) grow(strings, i, new String[Math.min(count, strings.length * 2)]);
+			int length = readVarInt(in);
+			if (length != NullLength)
+				strings[i] = new String(readBytes(checkLength(length), in), "UTF-8");
+		}
+		return strings;
+	}
+
+	private static int[] readInts(int count, DataInputStream in) throws IOException
+	{
+		int[] ints = new int[Math.min(count, ReadChunk)];
+		for (int i = 0; i < count; ++i)
+		{
+			if (i == ints.length)
+				ints = (int[]) grow(ints, i, new int[Math.min(count, ints.length * 2)]);
+			ints[i] = readVarInt(in);
+		}
+		return ints;
+	}
+
+	/**
+	 * The readBytes method reads a length prefixed byte array. The array
+	 * is grown while it is read, so that a corrupt length hits the end 
+	 * of the stream before it allocates more than the stream holds.
+	 * 
+	 * @param length The validated length
+	 * @param in The stream the bytes are read from
+	 * @return The bytes
+	 * @throws IOException Thrown if the stream ends before the bytes were read
+	 */
+	private static byte[] readBytes(int length, DataInputStream in) throws IOException
+	{
+		byte[] bytes = new byte[Math.min(length, ReadChunk)];
+		int offset = 0;
+		while (offset < length)
+		{
+			if (offset == bytes.length)
+				bytes = (byte[]) grow(bytes, offset, new byte[Math.min(length, bytes.length * 2)]);
+			in.readFully(bytes, offset, bytes.length - offset);
+			offset = bytes.length;
+		}
+		return bytes;
+	}
+
+	static Object grow(Object array, int length, Object grown)
+	{
+		System.arraycopy(array, 0, grown, 0, length);
+		return grown;
+	}
+
+	private static int readLength(DataInputStream in) throws IOException
+	{
+		return checkLength(readVarInt(in));
+	}
+
+	private static int checkLength(int length) throws IOException
+	{
+		if (length < 0)
+			throw new IOException("Malformed length " + length);
+		return length;
+	}
+
+	/**
+	 * The writeVarInt method writes an int as zig-zag encoded variable
+	 * length integer, so that small positive and negative values
+	 * only take a single byte.
+	 * 
+	 * @param value The value
+	 * @param out The stream the value is written to
+	 * @throws IOException Thrown if the value cannot be written
+	 */
+	static void writeVarInt(int value, DataOutputStream out) throws IOException
+	{
+		int bits = (value << 1) ^ (value >> 31);
+		while ((bits & ~0x7F) != 0)
+		{
+			out.writeByte((bits & 0x7F) | 0x80);
+			bits >>>= 7;
+		}
+		out.writeByte(bits);
+	}
+
+	static int readVarInt(DataInputStream in) throws IOException
+	{
+		int bits = 0;
+		for (int shift = 0; shift < 35; shift += 7)
+		{
+			int b = in.readUnsignedByte();
+			bits |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return (bits >>> 1) ^ -(bits & 1);
+		}
+		throw new IOException("Malformed variable length integer");
+	}
+
+	private static void skipBytes(int count, DataInputStream in) throws IOException
+	{
+		while (count > 0)
+		{
+			int skipped = in.skipBytes(count);
+			if (skipped <= 0)
+				throw new IOException("Unexpected end of stream");
+			count -= skipped;
+		}
+	}
+}
@@ -18,9 +18,12 @@
 
 package org.moonmonkeylabs.bbmvc;
 
+import java.util.Enumeration;
 import java.util.Hashtable;
 
+import net.rim.device.api.util.IntEnumeration;
 import net.rim.device.api.util.IntHashtable;
+import net.rim.device.api.util.IntVector;
 
 /**
  * The ViewDataHashtable class extends IntHashtable and additionally includes the Model object
@@ -30,9 +33,12 @@ import net.rim.device.api.util.IntHashtable;
  * @version 1.0
  * @see Hashtable
  */
-final public class ViewDataHashtable extends IntHashtable
+public class ViewDataHashtable extends IntHashtable
 {
 	Object _model;
+	private IntHashtable _derived;
+	private IntHashtable _dependents;
+	private IntVector _dirtyKeys;
 
 	/**
 	 * Default constructor for ViewDataHashtable
@@ -53,6 +59,19 @@ final public class ViewDataHashtable extends IntHashtable
 		super();
 		setModel(model);
 	}
+
+	/**
+	 * Constructor for ViewDataHashtable that takes a Model object and
+	 * the initial capacity of the hashtable
+	 * 
+	 * @param model An instance of a Model
+	 * @param initialCapacity The initial capacity of the hashtable
+	 */
+	protected ViewDataHashtable(Object model, int initialCapacity)
+	{
+		super(initialCapacity);
+		setModel(model);
+	}
 	
 	/**
 	 * The setModel mutator sets the ViewDataHashtable's Model object
@@ -73,4 +92,306 @@ final public class ViewDataHashtable extends IntHashtable
 	{
 		return _model;
 	}
+
+	public Object get(int key)
+	{
+		if (_derived != null)
+		{
+			Derived derived = (Derived) _derived.get(key);
+			if (derived != null && derived.stale)
+			{
+				// Cleared first so that a cycle reads null instead of recursing
+				derived.stale = false;
+				Object value = derived.function.compute(this);
+				if (value != null)
+					putEntry(key, value);
+				else
+					removeEntry(key);
+				return value;
+			}
+		}
+		return getEntry(key);
+	}
+
+	public boolean containsKey(int key)
+	{
+		return get(key) != null;
+	}
+
+	public Object put(int key, Object value)
+	{
+		Object previous = putEntry(key, value);
+		if (_dependents != null)
+			invalidate(key);
+		return previous;
+	}
+
+	public Object remove(int key)
+	{
+		Object previous = removeEntry(key);
+		if (_dependents != null && previous != null)
+			invalidate(key);
+		return previous;
+	}
+
+	public void clear()
+	{
+		clearEntries();
+		if (_derived != null)
+		{
+			Enumeration derived = _derived.elements();
+			while (derived.hasMoreElements())
+				((Derived) derived.nextElement()).stale = true;
+			IntEnumeration keys = _derived.keys();
+			while (keys.hasMoreElements())
+				markDirty(keys.nextElement());
+		}
+	}
+
+	/**
+	 * The getEntry method reads a stored entry. Subclasses that store
+	 * their entries differently override the entry methods instead of
+	 * get, put, remove and clear, so that derived entries keep working.
+	 * 
+	 * @param key The key
+	 * @return The stored value, null if there is none
+	 */
+	protected Object getEntry(int key)
+	{
+		return super.get(key);
+	}
+
+	/**
+	 * The putEntry method stores an entry.
+	 * 
+	 * @param key The key
+	 * @param value The value - cannot be NULL
+	 * @return The previous value, null if there was none
+	 */
+	protected Object putEntry(int key, Object value)
+	{
+		return super.put(key, value);
+	}
+
+	/**
+	 * The removeEntry method removes a stored entry.
+	 * 
+	 * @param key The key
+	 * @return The previous value, null if there was none
+	 */
+	protected Object removeEntry(int key)
+	{
+		return super.remove(key);
+	}
+
+	/**
+	 * The clearEntries method removes all stored entries.
+	 * 
+	 */
+	protected void clearEntries()
+	{
+		super.clear();
+	}
+
+	/**
+	 * The addDerived method adds an entry that is computed from other 
+	 * entries. It is computed when it is read and recomputed only when
+	 * it is read after one of the entries it depends on was put or 
+	 * removed. At that point its key is marked dirty, so the View can
+	 * be told to update it. A derived entry can depend on other 
+	 * derived entries.
+	 * 
+	 * @param key The key of the derived entry
+	 * @param dependsOn The keys of the entries it is computed from
+	 * @param function The DerivedValue that computes the entry
+	 */
+	public void addDerived(int key, int[] dependsOn, DerivedValue function)
+	{
+		if (function == null || dependsOn == null)
+			return;
+		if (_derived == null)
+		{
+			_derived = new IntHashtable();
+			_dependents = new IntHashtable();
+			_dirtyKeys = new IntVector();
+		}
+		removeDerived(key);
+
+		_derived.put(key, new Derived(dependsOn, function));
+		for (int i = 0; i < dependsOn.length; ++i)
+		{
+			IntVector dependents = (IntVector) _dependents.get(dependsOn[i]);
+			if (dependents == null)
+			{
+				dependents = new IntVector();
+				_dependents.put(dependsOn[i], dependents);
+			}
+			if (!dependents.contains(key))
+				dependents.addElement(key);
+		}
+		removeEntry(key);
+		markDirty(key);
+	}
+
+	/**
+	 * The removeDerived method turns a derived entry back into a normal
+	 * entry. Its last computed value is kept.
+	 * 
+	 * @param key The key of the derived entry
+	 */
+	public void removeDerived(int key)
+	{
+		if (_derived == null)
+			return;
+		Derived derived = (Derived) _derived.remove(key);
+		if (derived == null)
+			return;
+
+		for (int i = 0; i < derived.dependsOn.length; ++i)
+		{
+			IntVector dependents = (IntVector) _dependents.get(derived.dependsOn[i]);
+			if (dependents == null)
+				continue;
+			int index = dependents.indexOf(key);
+			if (index >= 0)
+				dependents.removeElementAt(index);
+			if (dependents.isEmpty())
+				_dependents.remove(derived.dependsOn[i]);
+		}
+	}
+
+	/**
+	 * The isDerived method checks if an entry is derived.
+	 * 
+	 * @param key The key
+	 * @return True if the entry is computed by a DerivedValue
+	 */
+	public boolean isDerived(int key)
+	{
+		return _derived != null && _derived.containsKey(key);
+	}
+
+	/**
+	 * The takeDirtyKeys method returns the keys of the derived entries
+	 * that became stale since the last call. The View should be updated 
+	 * for them, reading them recomputes them.
+	 * 
+	 * @return The dirty keys, an empty array if there are none
+	 */
+	public int[] takeDirtyKeys()
+	{
+		if (_dirtyKeys == null || _dirtyKeys.isEmpty())
+			return new int[0];
+		int[] dirtyKeys = _dirtyKeys.toArray();
+		_dirtyKeys.removeAllElements();
+		return dirtyKeys;
+	}
+
+	/**
+	 * The copyDerived method adds the derived entries of another 
+	 * ViewDataHashtable to this one. It is used when a table is copied.
+	 * 
+	 * @param source The ViewDataHashtable the derived entries are copied from
+	 */
+	void copyDerived(ViewDataHashtable source)
+	{
+		if (source._derived == null)
+			return;
+		IntEnumeration keys = source._derived.keys();
+		while (keys.hasMoreElements())
+		{
+			int key = keys.nextElement();
+			Derived derived = (Derived) source._derived.get(key);
+			addDerived(key, derived.dependsOn, derived.function);
+		}
+	}
+
+	/**
+	 * The invalidate method marks the derived entries that depend on a 
+	 * key as stale, including those that depend on them in turn.
+	 * 
+	 * @param key The key that changed
+	 */
+	private void invalidate(int key)
+	{
+		IntVector dependents = (IntVector) _dependents.get(key);
+		if (dependents == null)
+			return;
+		int numDependents = dependents.size();
+		for (int i = 0; i < numDependents; ++i)
+		{
+			int dependentKey = dependents.elementAt(i);
+			Derived derived = (Derived) _derived.get(dependentKey);
+			if (derived == null || derived.stale)
+				continue;
+			derived.stale = true;
+			// The outdated value must not be read through keys or elements
+			removeEntry(dependentKey);
+			markDirty(dependentKey);
+			invalidate(dependentKey);
+		}
+	}
+
+	private void markDirty(int key)
+	{
+		if (!_dirtyKeys.contains(key))
+			_dirtyKeys.addElement(key);
+	}
+
+	/**
+	 * The getChangedKeys method compares the ViewDataHashtable to a previous
+	 * one and returns the keys that were added, removed or changed. Values
+	 * are compared by identity first and then by equals.
+	 * 
+	 * @param previous The previous ViewDataHashtable, null if there was none
+	 * @return The keys that differ between the two ViewDataHashtables
+	 */
+	public int[] getChangedKeys(ViewDataHashtable previous)
+	{
+		IntVector changedKeys = new IntVector();
+		IntEnumeration keys = keys();
+		while (keys.hasMoreElements())
+		{
+			int key = keys.nextElement();
+			Object value = get(key);
+			Object previousValue = previous != null ? previous.get(key) : null;
+			if (previousValue == null || (previousValue != value && !previousValue.equals(value)))
+				changedKeys.addElement(key);
+		}
+
+		// Keys that only exist in the previous ViewData were removed
+		if (previous != null)
+		{
+			keys = previous.keys();
+			while (keys.hasMoreElements())
+			{
+				int key = keys.nextElement();
+				if (!containsKey(key))
+					changedKeys.addElement(key);
+			}
+		}
+
+		int numChanged = changedKeys.size();
+		int[] result = new int[numChanged];
+		for (int i = 0; i < numChanged; ++i)
+			result[i] = changedKeys.elementAt(i);
+		return result;
+	}
+
+	/**
+	 * The Derived class holds a derived entry's function and state
+	 */
+	private static final class Derived
+	{
+		final int[] dependsOn;
+		final DerivedValue function;
+		boolean stale;
+
+		Derived(int[] dependsOn, DerivedValue function)
+		{
+			this.dependsOn = dependsOn;
+			this.function = function;
+			this.stale = true;
+		}
+	}
 }
@@ -0,0 +1,204 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.ui.container;
+
+import java.util.Enumeration;
+
+import net.rim.device.api.system.Application;
+import net.rim.device.api.util.IntEnumeration;
+import net.rim.device.api.util.IntHashtable;
+
+import org.moonmonkeylabs.bbmvc.ViewListener;
+
+/**
+ * The ViewEventCoalescer class is used by the screen containers to 
+ * merge bursts of view events before they reach the ViewListeners.
+ * Each key can have its own policy:
+ * 
+ * Immediate - every event is delivered right away (the default)
+ * Debounce - a burst is delivered once after the interval passed without 
+ *            another event of the same key, e.g. for type-ahead search
+ * Throttle - events are delivered at most once per interval, the events
+ *            within an interval are merged into one delivery at its end
+ * 
+ * The coalescer has to be used on the event thread, delayed events are 
+ * delivered on the event thread as well. The owner has to call cancel 
+ * once its screen is closed or popped, otherwise pending events are 
+ * still delivered. ViewMainScreen and ViewPopupScreen do this in close
+ * and onUndisplay.
+ * 
+ * @version 1.0
+ */
+public final class ViewEventCoalescer
+{
+	public static final int Immediate = 0;
+	public static final int Debounce = 1;
+	public static final int Throttle = 2;
+
+	private ViewListener _target;
+	private IntHashtable _policies;
+
+	/**
+	 * A constructor that takes the ViewListener that receives the
+	 * coalesced events
+	 * 
+	 * @param target The ViewListener that delivers the events
+	 */
+	public ViewEventCoalescer(ViewListener target)
+	{
+		_target = target;
+		_policies = new IntHashtable();
+	}
+
+	/**
+	 * The setPolicy method sets the policy for a key. A pending event
+	 * for the key is delivered first.
+	 * 
+	 * @param key A numerical key identifying the event
+	 * @param policy Immediate, Debounce or Throttle
+	 * @param interval The quiet period or minimum interval in milliseconds
+	 */
+	public void setPolicy(int key, int policy, long interval)
+	{
+		flush(key);
+		if (policy == Immediate)
+			_policies.remove(key);
+		else
+			_policies.put(key, new Policy(policy, interval));
+	}
+
+	/**
+	 * The removePolicy method resets a key to Immediate. A pending event
+	 * for the key is delivered first.
+	 * 
+	 * @param key A numerical key identifying the event
+	 */
+	public void removePolicy(int key)
+	{
+		setPolicy(key, Immediate, 0);
+	}
+
+	/**
+	 * The post method delivers an event according to the policy of its key.
+	 * 
+	 * @param key A numerical key identifying the event
+	 */
+	public void post(int key)
+	{
+		Policy policy = (Policy) _policies.get(key);
+		if (policy == null)
+		{
+			_target.viewStateChanged(key);
+			return;
+		}
+
+		if (policy.mode == Debounce)
+		{
+			// Every event restarts the quiet period
+			cancel(policy);
+			schedule(policy, key, policy.interval);
+		}
+		else if (policy.pendingId == -1)
+		{
+			long elapsed = System.currentTimeMillis() - policy.lastDelivery;
+			if (elapsed >= policy.interval)
+				deliver(policy, key);
+			else
+				schedule(policy, key, policy.interval - elapsed);
+		}
+		// Otherwise the event is merged into the pending delivery
+	}
+
+	/**
+	 * The flush method delivers all pending events right away.
+	 * 
+	 */
+	public void flush()
+	{
+		IntEnumeration keys = _policies.keys();
+		while (keys.hasMoreElements())
+			flush(keys.nextElement());
+	}
+
+	/**
+	 * The cancel method drops all pending events, e.g. when the screen is closed.
+	 * 
+	 */
+	public void cancel()
+	{
+		Enumeration policies = _policies.elements();
+		while (policies.hasMoreElements())
+			cancel((Policy) policies.nextElement());
+	}
+
+	private void flush(int key)
+	{
+		Policy policy = (Policy) _policies.get(key);
+		if (policy != null && policy.pendingId != -1)
+		{
+			cancel(policy);
+			deliver(policy, key);
+		}
+	}
+
+	private void schedule(final Policy policy, final int key, long delay)
+	{
+		policy.pendingId = Application.getApplication().invokeLater(new Runnable()
+		{
+			public void run()
+			{
+				policy.pendingId = -1;
+				deliver(policy, key);
+			}
+		}, delay, false);
+	}
+
+	private void cancel(Policy policy)
+	{
+		if (policy.pendingId != -1)
+		{
+			Application.getApplication().cancelInvokeLater(policy.pendingId);
+			policy.pendingId = -1;
+		}
+	}
+
+	private void deliver(Policy policy, int key)
+	{
+		policy.lastDelivery = System.currentTimeMillis();
+		_target.viewStateChanged(key);
+	}
+
+	/**
+	 * The Policy class holds the policy and the delivery state of a key
+	 */
+	private static final class Policy
+	{
+		final int mode;
+		final long interval;
+		int pendingId;
+		long lastDelivery;
+
+		Policy(int mode, long interval)
+		{
+			this.mode = mode;
+			this.interval = interval;
+			this.pendingId = -1;
+		}
+	}
+}
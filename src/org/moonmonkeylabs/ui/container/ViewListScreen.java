@@ -0,0 +1,379 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.ui.container;
+
+import net.rim.device.api.system.Characters;
+import net.rim.device.api.system.Display;
+import net.rim.device.api.ui.Field;
+import net.rim.device.api.ui.Graphics;
+import net.rim.device.api.ui.Manager;
+import net.rim.device.api.ui.XYRect;
+
+/**
+ * The ViewListScreen class is a View for long lists. Instead of
+ * creating a Field for every row, it only creates as many row fields
+ * as fit on the screen plus a small buffer and rebinds them to the 
+ * data as the user scrolls. When the backing data changes, only the 
+ * rows within the reported range are rebound.
+ * 
+ * @version 1.0
+ */
+public abstract class ViewListScreen extends ViewMainScreen
+{
+	public static final int RowSelected = 2003;
+
+	// Number of rows that are bound above and below the visible rows
+	private static final int RowBuffer = 2;
+
+	private RowManager _rowManager;
+
+	/**
+	 * Default constructor
+	 */
+	protected ViewListScreen()
+	{
+		this(0);
+	}
+
+	/**
+	 * A constructor that takes the screen's style. The screen itself
+	 * never scrolls vertically - the row manager handles the scrolling.
+	 * 
+	 * @param style The style of the screen
+	 */
+	protected ViewListScreen(long style)
+	{
+		super(style | NO_VERTICAL_SCROLL);
+		_rowManager = new RowManager();
+		add(_rowManager);
+	}
+
+	/**
+	 * The getRowCount method returns the number of rows in the
+	 * backing data.
+	 * 
+	 * @return The number of rows
+	 */
+	abstract protected int getRowCount();
+
+	/**
+	 * The getRowHeight method returns the fixed height of a single row.
+	 * 
+	 * @return The row height in pixels
+	 */
+	abstract protected int getRowHeight();
+
+	/**
+	 * The createRowField method creates a new, empty row field. It is only
+	 * called for the fields of the row pool. The field should not be 
+	 * focusable since the list draws the focus for the selected row.
+	 * 
+	 * @return A new row Field
+	 */
+	abstract protected Field createRowField();
+
+	/**
+	 * The bindRowField method binds a row field to the data of a row.
+	 * 
+	 * @param field A row Field previously created by createRowField
+	 * @param index The index of the row that the field now shows
+	 */
+	abstract protected void bindRowField(Field field, int index);
+
+	/**
+	 * The getSelectedIndex accessor method returns the index of the
+	 * selected row.
+	 * 
+	 * @return The selected index, -1 if no row is selected
+	 */
+	public int getSelectedIndex()
+	{
+		return _rowManager.getSelectedIndex();
+	}
+
+	/**
+	 * The setSelectedIndex mutator method selects a row and scrolls it
+	 * into view.
+	 * 
+	 * @param index The index of the row to select
+	 */
+	public void setSelectedIndex(int index)
+	{
+		_rowManager.setSelectedIndex(index);
+	}
+
+	/**
+	 * The rowsChanged method rebinds the rows within a range, if any of
+	 * them are currently bound to a row field. 
+	 * 
+	 * @param first The index of the first changed row
+	 * @param count The number of changed rows
+	 */
+	public void rowsChanged(int first, int count)
+	{
+		_rowManager.rowsChanged(first, count);
+	}
+
+	/**
+	 * The rowsInserted method is used when rows were inserted into
+	 * the backing data.
+	 * 
+	 * @param first The index of the first inserted row
+	 * @param count The number of inserted rows
+	 */
+	public void rowsInserted(int first, int count)
+	{
+		_rowManager.rowsShifted(first, count);
+	}
+
+	/**
+	 * The rowsRemoved method is used when rows were removed from
+	 * the backing data.
+	 * 
+	 * @param first The index of the first removed row
+	 * @param count The number of removed rows
+	 */
+	public void rowsRemoved(int first, int count)
+	{
+		_rowManager.rowsShifted(first, -count);
+	}
+
+	/**
+	 * The reloadRows method rebinds all rows, e.g. when the backing
+	 * data was replaced.
+	 */
+	public void reloadRows()
+	{
+		_rowManager.rowsShifted(0, 0);
+	}
+
+	/**
+	 * The RowManager class lays out the pool of row fields. Row i is 
+	 * always bound to the field in slot i % poolSize, so that
+	 * scrolling only rebinds the rows that move into the window.
+	 */
+	private final class RowManager extends Manager
+	{
+		private int[] _boundIndex;
+		private int _rowCount;
+		private int _rowHeight;
+		private int _selectedIndex;
+		private boolean _inLayout;
+
+		RowManager()
+		{
+			super(VERTICAL_SCROLL | VERTICAL_SCROLLBAR);
+			_boundIndex = new int[0];
+			_rowHeight = 1;
+			_selectedIndex = -1;
+		}
+
+		int getSelectedIndex()
+		{
+			return _selectedIndex;
+		}
+
+		void setSelectedIndex(int index)
+		{
+			if (index < -1 || index >= _rowCount)
+				return;
+			_selectedIndex = index;
+			if (index >= 0)
+				scrollToRow(index);
+			invalidate();
+		}
+
+		void rowsChanged(int first, int count)
+		{
+			int poolSize = _boundIndex.length;
+			for (int slot = 0; slot < poolSize; ++slot)
+			{
+				int index = _boundIndex[slot];
+				if (index >= first && index < first + count)
+					bindRowField(getField(slot), index);
+			}
+		}
+
+		void rowsShifted(int first, int delta)
+		{
+			// All rows from the first affected index onwards moved, so 
+			// their fields have to be rebound on the next layout
+			int poolSize = _boundIndex.length;
+			for (int slot = 0; slot < poolSize; ++slot)
+			{
+				if (_boundIndex[slot] >= first)
+					_boundIndex[slot] = -1;
+			}
+
+			// Keep the selection on the same row if possible
+			if (_selectedIndex >= first)
+				_selectedIndex = Math.max(first, _selectedIndex + delta);
+			updateLayout();
+		}
+
+		public boolean isFocusable()
+		{
+			return _rowCount > 0;
+		}
+
+		protected void onDisplay()
+		{
+			super.onDisplay();
+			// The pool is created once it is known how large the rows are. It 
+			// is sized for the longer display side so it survives rotation.
+			if (getFieldCount() == 0)
+			{
+				int rowHeight = Math.max(1, getRowHeight());
+				int displayHeight = Math.max(Display.getWidth(), Display.getHeight());
+				int poolSize = displayHeight / rowHeight + 1 + 2 * RowBuffer;
+				_boundIndex = new int[poolSize];
+				for (int slot = 0; slot < poolSize; ++slot)
+				{
+					_boundIndex[slot] = -1;
+					add(createRowField());
+				}
+			}
+		}
+
+		protected void sublayout(int width, int height)
+		{
+			_inLayout = true;
+			_rowHeight = Math.max(1, getRowHeight());
+			_rowCount = Math.max(0, getRowCount());
+			if (_selectedIndex >= _rowCount)
+				_selectedIndex = _rowCount - 1;
+
+			int visibleHeight = Math.min(height, Display.getHeight());
+			int virtualHeight = Math.max(visibleHeight, _rowCount * _rowHeight);
+			setVirtualExtent(width, virtualHeight);
+			setExtent(width, visibleHeight);
+			bindVisibleRows();
+
+			// Unbound fields still show the row they were bound to last. They
+			// are parked at the end of the virtual extent, which is below the
+			// visible area when the list is shorter than the screen, so they
+			// are never painted
+			int poolSize = _boundIndex.length;
+			for (int slot = 0; slot < poolSize; ++slot)
+			{
+				Field row = getField(slot);
+				int index = _boundIndex[slot];
+				layoutChild(row, width, _rowHeight);
+				setPositionChild(row, 0, index >= 0 ? index * _rowHeight : virtualHeight);
+			}
+			_inLayout = false;
+		}
+
+		public void setVerticalScroll(int position)
+		{
+			super.setVerticalScroll(position);
+			// Rows that scrolled into the window need to be bound and positioned
+			if (!_inLayout && bindVisibleRows())
+				updateLayout();
+		}
+
+		/**
+		 * The bindVisibleRows method binds all rows of the current window
+		 * that are not already bound to their slot.
+		 * 
+		 * @return True if any field was rebound, false otherwise
+		 */
+		private boolean bindVisibleRows()
+		{
+			int poolSize = _boundIndex.length;
+			if (poolSize == 0)
+				return false;
+
+			int first = Math.max(0, getVerticalScroll() / _rowHeight - RowBuffer);
+			first = Math.max(0, Math.min(first, _rowCount - poolSize));
+			int last = Math.min(_rowCount, first + poolSize);
+			boolean rebound = false;
+			for (int index = first; index < last; ++index)
+			{
+				int slot = index % poolSize;
+				if (_boundIndex[slot] != index)
+				{
+					bindRowField(getField(slot), index);
+					_boundIndex[slot] = index;
+					rebound = true;
+				}
+			}
+			return rebound;
+		}
+
+		private void scrollToRow(int index)
+		{
+			int top = index * _rowHeight;
+			int scroll = getVerticalScroll();
+			if (top < scroll)
+				setVerticalScroll(top);
+			else if (top + _rowHeight > scroll + getHeight())
+				setVerticalScroll(top + _rowHeight - getHeight());
+		}
+
+		protected void onFocus(int direction)
+		{
+			super.onFocus(direction);
+			if (_selectedIndex < 0 && _rowCount > 0)
+				setSelectedIndex(direction < 0 ? _rowCount - 1 : 0);
+		}
+
+		protected int moveFocus(int amount, int status, int time)
+		{
+			int target = _selectedIndex + amount;
+			int clamped = Math.max(0, Math.min(target, _rowCount - 1));
+			if (clamped != _selectedIndex)
+				setSelectedIndex(clamped);
+			// Whatever is left over moves the focus out of the list
+			return target - clamped;
+		}
+
+		public void getFocusRect(XYRect rect)
+		{
+			rect.set(0, Math.max(0, _selectedIndex) * _rowHeight, getWidth(), _rowHeight);
+		}
+
+		protected void drawFocus(Graphics graphics, boolean on)
+		{
+			if (_selectedIndex < 0)
+				return;
+			XYRect rect = new XYRect();
+			getFocusRect(rect);
+			drawHighlightRegion(graphics, HIGHLIGHT_FOCUS, on, rect.x, rect.y, rect.width, rect.height);
+		}
+
+		protected boolean navigationClick(int status, int time)
+		{
+			if (_selectedIndex < 0)
+				return false;
+			notifyViewListeners(RowSelected);
+			return true;
+		}
+
+		protected boolean keyChar(char key, int status, int time)
+		{
+			if (key == Characters.ENTER && _selectedIndex >= 0)
+			{
+				notifyViewListeners(RowSelected);
+				return true;
+			}
+			return super.keyChar(key, status, time);
+		}
+	}
+}
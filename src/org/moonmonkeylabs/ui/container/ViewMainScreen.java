@@ -21,6 +21,7 @@ package org.moonmonkeylabs.ui.container;
 import java.util.Vector;
 import net.rim.device.api.ui.Screen;
 import net.rim.device.api.ui.container.MainScreen;
+import org.moonmonkeylabs.bbmvc.Listeners;
 import org.moonmonkeylabs.bbmvc.View;
 import org.moonmonkeylabs.bbmvc.ViewDataHashtable;
 import org.moonmonkeylabs.bbmvc.ViewListener;
@@ -38,8 +39,10 @@ public abstract class ViewMainScreen extends MainScreen implements View
 	public static final int ScreenClose = 2001;
 	public static final int ScreenSave = 2002;
 
+	// Holds ViewListeners or WeakReferences to them, subclasses should use getViewListeners
 	protected Vector _viewListeners;
 	private ViewDataHashtable _viewData;
+	private ViewEventCoalescer _eventCoalescer;
 
 	/**
 	 * Default constructor
@@ -54,6 +57,13 @@ public abstract class ViewMainScreen extends MainScreen implements View
 		super(style);
 		_viewListeners = new Vector();
 		_viewData = new ViewDataHashtable();
+		_eventCoalescer = new ViewEventCoalescer(new ViewListener()
+		{
+			public void viewStateChanged(int key)
+			{
+				dispatchViewListeners(key);
+			}
+		});
 	}
 
 	/**
@@ -124,10 +134,19 @@ public abstract class ViewMainScreen extends MainScreen implements View
 	 */
 	public void addViewListener(final ViewListener viewListener)
 	{
-		if (!_viewListeners.contains(viewListener))
-		{
-			_viewListeners.addElement(viewListener);
-		}
+		Listeners.add(_viewListeners, viewListener, false);
+	}
+
+	/**
+	 * The addWeakViewListener method is used to add a ViewListener without 
+	 * keeping it alive. Collected listeners are dropped during the next
+	 * notification. The owner has to keep a reference to the listener.
+	 * 
+	 * @param viewListener The ViewListener to be added
+	 */
+	public void addWeakViewListener(final ViewListener viewListener)
+	{
+		Listeners.add(_viewListeners, viewListener, true);
 	}
 
 	/**
@@ -137,20 +156,70 @@ public abstract class ViewMainScreen extends MainScreen implements View
 	 */
 	public void removeViewListener(final ViewListener viewListener)
 	{
-		_viewListeners.removeElement(viewListener);
+		Listeners.remove(_viewListeners, viewListener);
+	}
+
+	/**
+	 * The getViewListeners accessor method returns the ViewListeners that
+	 * are still alive. Since a copy is returned, listeners can be added 
+	 * or removed while the copy is iterated.
+	 * 
+	 * @return The ViewListeners in the order they were added
+	 */
+	protected ViewListener[] getViewListeners()
+	{
+		Object[] listeners = Listeners.getListeners(_viewListeners);
+		ViewListener[] viewListeners = new ViewListener[listeners.length];
+		System.arraycopy(listeners, 0, viewListeners, 0, listeners.length);
+		return viewListeners;
+	}
+
+	/**
+	 * The setViewEventPolicy method sets how events of a key are delivered
+	 * to the ViewListeners, e.g. to debounce the events of a search field.
+	 * 
+	 * @param key A numerical key that identifying the event
+	 * @param policy ViewEventCoalescer.Immediate, Debounce or Throttle
+	 * @param interval The quiet period or minimum interval in milliseconds
+	 */
+	public void setViewEventPolicy(int key, int policy, long interval)
+	{
+		_eventCoalescer.setPolicy(key, policy, interval);
+	}
+
+	/**
+	 * The removeViewEventPolicy method resets the events of a key to
+	 * be delivered immediately.
+	 * 
+	 * @param key A numerical key that identifying the event
+	 */
+	public void removeViewEventPolicy(int key)
+	{
+		_eventCoalescer.removePolicy(key);
 	}
 
 	/**
 	 * The notifyViewListeners kicks of the notification process to 
-	 * all subscribers. 
+	 * all subscribers. Depending on the key's policy the event is 
+	 * delivered right away or merged with other events of the same key.
 	 * 
 	 * @param key A numerical key that identifying the event
 	 */
 	protected void notifyViewListeners(int key)
 	{
-		int numListener = _viewListeners.size();
-		for (int i = 0; i < numListener; ++i)
-			notifyViewListener(((ViewListener) _viewListeners.elementAt(i)), key);
+		_eventCoalescer.post(key);
+	}
+
+	/**
+	 * The dispatchViewListeners method delivers an event to all subscribers.
+	 * 
+	 * @param key A numerical key that identifying the event
+	 */
+	private void dispatchViewListeners(int key)
+	{
+		ViewListener[] listeners = getViewListeners();
+		for (int i = 0; i < listeners.length; ++i)
+			notifyViewListener(listeners[i], key);
 	}
 	
 	/**
@@ -170,10 +239,23 @@ public abstract class ViewMainScreen extends MainScreen implements View
 	 * Override the default close method. 
 	 * Let the Navigator do the work. 
 	 * Notify the controller that we are ready to close. 
+	 * Delayed events are dropped since the screen is going away.
 	 * 
 	 */
 	public void close()
 	{
+		_eventCoalescer.cancel();
 		notifyViewListeners(ScreenClose);
 	}
+
+	/**
+	 * The onUndisplay method drops the delayed events once the screen
+	 * was popped, so that they do not reach the Controller afterwards.
+	 * 
+	 */
+	protected void onUndisplay()
+	{
+		_eventCoalescer.cancel();
+		super.onUndisplay();
+	}
 }
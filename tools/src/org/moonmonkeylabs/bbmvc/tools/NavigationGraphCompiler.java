@@ -0,0 +1,368 @@
+/* 
+ * Copyright (C) 2010 Thorben Primke/Moon Monkey Labs <tprimke@moonmonkeylabs.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.moonmonkeylabs.bbmvc.tools;
+
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * The NavigationGraphCompiler class compiles a declarative navigation
+ * graph into the binary descriptor that Navigator.loadNavigationGraph
+ * reads. It is a desktop build step and not part of the library, the
+ * resulting resource is packaged with the application. It only uses
+ * java.* classes, so it runs on any JVM:
+ * 
+ * <pre>
+ * java org.moonmonkeylabs.bbmvc.tools.NavigationGraphCompiler graph.txt graph.bin
+ * </pre>
+ * 
+ * The text has one declaration per line:
+ * 
+ * <pre>
+ * # comment
+ * controller &lt;id&gt; &lt;factory class or -&gt; [default parameter ...]
+ * edge &lt;from id&gt; &lt;to id&gt; [&lt;to id&gt; ...]
+ * </pre>
+ * 
+ * Default parameters that are numbers are passed as Integers, all
+ * others as Strings. Quoted parameters are always Strings and can
+ * contain spaces. A
+ * Controller without a factory is added in code. Duplicate ids and
+ * edges to undeclared Controllers are compile errors.
+ * 
+ * @version 1.0
+ */
+public final class NavigationGraphCompiler
+{
+	// The format of the descriptor, these have to match NavigationGraph
+	private static final int Magic = 0x4E415647;
+	private static final int Version = 1;
+	private static final int StringTag = 1;
+	private static final int IntTag = 2;
+
+	private NavigationGraphCompiler()
+	{
+	}
+
+	/**
+	 * The main static method compiles the graph of a text file into a
+	 * binary descriptor file.
+	 * 
+	 * @param args The path of the text and the path of the descriptor
+	 * @throws IOException Thrown if the graph is invalid or a file cannot be read or written
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length != 2)
+		{
+			System.err.println("Usage: NavigationGraphCompiler <graph text> <descriptor>");
+			System.exit(2);
+		}
+
+		InputStream in = new FileInputStream(args[0]);
+		try
+		{
+			OutputStream out = new FileOutputStream(args[1]);
+			try
+			{
+				compile(in, out);
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * The compile static method compiles a navigation graph.
+	 * 
+	 * @param in The UTF-8 encoded text of the graph
+	 * @param out The OutputStream the binary descriptor is written to
+	 * @throws IOException Thrown if the graph is invalid or cannot be written
+	 */
+	public static void compile(InputStream in, OutputStream out) throws IOException
+	{
+		Hashtable controllers = new Hashtable();
+		Vector edgeLines = new Vector();
+		Vector edges = new Vector();
+		Reader reader = new InputStreamReader(in, "UTF-8");
+		int lineNumber = 0;
+		String line;
+		while ((line = readLine(reader)) != null)
+		{
+			++lineNumber;
+			Vector tokens = tokenize(line, lineNumber);
+			if (tokens.isEmpty())
+				continue;
+
+			String keyword = ((Token) tokens.elementAt(0)).text;
+			if (keyword.equals("controller"))
+			{
+				if (tokens.size() < 3)
+					throw error(lineNumber, "controller needs an id and a factory");
+				Integer id = parseId(tokens.elementAt(1), lineNumber);
+				if (controllers.containsKey(id))
+					throw error(lineNumber, "duplicate controller " + id);
+				Declaration declaration = new Declaration();
+				String factory = ((Token) tokens.elementAt(2)).text;
+				declaration.factory = factory.equals("-") ? "" : factory;
+				for (int i = 3; i < tokens.size(); ++i)
+				{
+					// Quoted parameters stay Strings even if they look like numbers
+					Token token = (Token) tokens.elementAt(i);
+					Integer number = token.quoted ? null : parseInt(token.text);
+					declaration.parameters.addElement(number != null ? (Object) number : token.text);
+				}
+				controllers.put(id, declaration);
+			}
+			else if (keyword.equals("edge"))
+			{
+				if (tokens.size() < 3)
+					throw error(lineNumber, "edge needs a source and a target");
+				edges.addElement(tokens);
+				edgeLines.addElement(new Integer(lineNumber));
+			}
+			else
+				throw error(lineNumber, "unknown declaration " + keyword);
+		}
+
+		// Edges are resolved once all Controllers are declared
+		int numEdges = 0;
+		for (int i = 0; i < edges.size(); ++i)
+		{
+			Vector tokens = (Vector) edges.elementAt(i);
+			int edgeLine = ((Integer) edgeLines.elementAt(i)).intValue();
+			Integer fromId = parseId(tokens.elementAt(1), edgeLine);
+			Declaration from = (Declaration) controllers.get(fromId);
+			if (from == null)
+				throw error(edgeLine, "undeclared controller " + fromId);
+			for (int j = 2; j < tokens.size(); ++j)
+			{
+				Integer toId = parseId(tokens.elementAt(j), edgeLine);
+				if (!controllers.containsKey(toId))
+					throw error(edgeLine, "undeclared controller " + toId);
+				if (!from.targets.contains(toId))
+				{
+					from.targets.addElement(toId);
+					++numEdges;
+				}
+			}
+		}
+
+		write(controllers, numEdges, new DataOutputStream(out));
+	}
+
+	private static void write(Hashtable controllers, int numEdges, DataOutputStream out) throws IOException
+	{
+		int[] ids = new int[controllers.size()];
+		Enumeration keys = controllers.keys();
+		for (int i = 0; keys.hasMoreElements(); ++i)
+		{
+			// Insertion sort, graphs have few Controllers
+			int id = ((Integer) keys.nextElement()).intValue();
+			int j = i;
+			while (j > 0 && ids[j - 1] > id)
+			{
+				ids[j] = ids[j - 1];
+				--j;
+			}
+			ids[j] = id;
+		}
+
+		out.writeInt(Magic);
+		out.writeByte(Version);
+		writeVarInt(ids.length, out);
+		writeVarInt(numEdges, out);
+		for (int i = 0; i < ids.length; ++i)
+		{
+			Declaration declaration = (Declaration) controllers.get(new Integer(ids[i]));
+			writeVarInt(ids[i], out);
+			out.writeUTF(declaration.factory);
+
+			int numParameters = declaration.parameters.size();
+			writeVarInt(numParameters, out);
+			for (int j = 0; j < numParameters; ++j)
+			{
+				Object parameter = declaration.parameters.elementAt(j);
+				if (parameter instanceof Integer)
+				{
+					out.writeByte(IntTag);
+					writeVarInt(((Integer) parameter).intValue(), out);
+				}
+				else
+				{
+					out.writeByte(StringTag);
+					out.writeUTF((String) parameter);
+				}
+			}
+
+			int numTargets = declaration.targets.size();
+			writeVarInt(numTargets, out);
+			for (int j = 0; j < numTargets; ++j)
+				writeVarInt(((Integer) declaration.targets.elementAt(j)).intValue(), out);
+		}
+		out.flush();
+	}
+
+	/**
+	 * The writeVarInt method writes a zigzag encoded variable length int,
+	 * the encoding ViewDataCodec reads on the device.
+	 * 
+	 * @param value The value
+	 * @param out The DataOutputStream
+	 * @throws IOException Thrown if the value cannot be written
+	 */
+	private static void writeVarInt(int value, DataOutputStream out) throws IOException
+	{
+		int bits = (value << 1) ^ (value >> 31);
+		while ((bits & ~0x7F) != 0)
+		{
+			out.writeByte((bits & 0x7F) | 0x80);
+			bits >>>= 7;
+		}
+		out.writeByte(bits);
+	}
+
+	/**
+	 * The readLine method reads a line without the line break.
+	 * 
+	 * @param reader The Reader
+	 * @return The line, null at the end of the text
+	 * @throws IOException Thrown if the text cannot be read
+	 */
+	private static String readLine(Reader reader) throws IOException
+	{
+		StringBuffer line = new StringBuffer();
+		int c;
+		while ((c = reader.read()) != -1)
+		{
+			if (c == '\n')
+				return line.toString();
+			if (c != '\r')
+				line.append((char) c);
+		}
+		return line.length() > 0 ? line.toString() : null;
+	}
+
+	/**
+	 * The tokenize method splits a line at whitespace. Quoted tokens can
+	 * contain whitespace, a # outside of quotes starts a comment.
+	 * 
+	 * @param line The line
+	 * @param lineNumber The number of the line for errors
+	 * @return The Tokens
+	 * @throws IOException Thrown if a quote is not closed
+	 */
+	private static Vector tokenize(String line, int lineNumber) throws IOException
+	{
+		Vector tokens = new Vector();
+		int length = line.length();
+		int i = 0;
+		while (i < length)
+		{
+			char c = line.charAt(i);
+			if (c == ' ' || c == '\t')
+				++i;
+			else if (c == '#')
+				break;
+			else if (c == '"')
+			{
+				int end = line.indexOf('"', i + 1);
+				if (end < 0)
+					throw error(lineNumber, "unclosed quote");
+				tokens.addElement(new Token(line.substring(i + 1, end), true));
+				i = end + 1;
+			}
+			else
+			{
+				int end = i;
+				while (end < length && line.charAt(end) != ' ' && line.charAt(end) != '\t')
+					++end;
+				tokens.addElement(new Token(line.substring(i, end), false));
+				i = end;
+			}
+		}
+		return tokens;
+	}
+
+	private static Integer parseId(Object token, int lineNumber) throws IOException
+	{
+		String text = ((Token) token).text;
+		Integer id = parseInt(text);
+		if (id == null || id.intValue() <= 0)
+			throw error(lineNumber, "invalid controller id " + text);
+		return id;
+	}
+
+	private static Integer parseInt(String token)
+	{
+		try
+		{
+			return new Integer(Integer.parseInt(token));
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+	}
+
+	private static IOException error(int lineNumber, String message)
+	{
+		return new IOException("Line " + lineNumber + ": " + message);
+	}
+
+	/**
+	 * The Token class holds a token of a line and whether it was quoted
+	 */
+	private static final class Token
+	{
+		final String text;
+		final boolean quoted;
+
+		Token(String text, boolean quoted)
+		{
+			this.text = text;
+			this.quoted = quoted;
+		}
+	}
+
+	/**
+	 * The Declaration class holds a declared Controller while compiling
+	 */
+	private static final class Declaration
+	{
+		String factory;
+		Vector parameters = new Vector();
+		Vector targets = new Vector();
+	}
+}